@@ -0,0 +1,81 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.lib.util;
+
+/**
+ * A growable ring buffer of int values (e.g., linear pixel indices) which
+ * can be used as a queue (FIFO) or as a stack (LIFO). Unlike a
+ * Queue&lt;Point&gt; or Stack&lt;Point&gt;, no objects are created per element,
+ * and the buffer can be reused for any number of flood-fill operations.
+ */
+public class IntDeque {
+	private int[] data;
+	private int head = 0;	// position of the first element
+	private int size = 0;
+
+	public IntDeque() {
+		this(256);
+	}
+
+	public IntDeque(int capacity) {
+		data = new int[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];	// power of 2
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Appends x at the end.
+	 */
+	public void add(int x) {
+		if (size == data.length) {
+			grow();
+		}
+		data[(head + size) & (data.length - 1)] = x;
+		size++;
+	}
+
+	/**
+	 * Removes and returns the first element (queue operation).
+	 */
+	public int removeFirst() {
+		int x = data[head];
+		head = (head + 1) & (data.length - 1);
+		size--;
+		return x;
+	}
+
+	/**
+	 * Removes and returns the last element (stack operation).
+	 */
+	public int removeLast() {
+		size--;
+		return data[(head + size) & (data.length - 1)];
+	}
+
+	private void grow() {
+		int[] newData = new int[2 * data.length];
+		for (int i = 0; i < size; i++) {
+			newData[i] = data[(head + i) & (data.length - 1)];
+		}
+		data = newData;
+		head = 0;
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.lib.util;
+
+/**
+ * This utility class splits an index range (typically the rows of an image)
+ * into contiguous bands which are processed concurrently, one thread per band.
+ * The calling thread processes the first band itself and returns after all
+ * bands are finished. Any exception thrown by a band task is passed on to the
+ * caller.
+ */
+public abstract class Parallel {
+
+	/**
+	 * A task that processes the index range [from, to) of a single band.
+	 */
+	public interface BandTask {
+		/**
+		 * @param band the index of this band (0,...,K-1)
+		 * @param from first index (inclusive)
+		 * @param to last index (exclusive)
+		 */
+		void run(int band, int from, int to);
+	}
+
+	/**
+	 * @return the number of available processors (used as the default number of bands)
+	 */
+	public static int getThreadCount() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Returns the number of bands actually used by {@link #forBands(int, int, BandTask)}
+	 * for n indices and (at most) k bands.
+	 */
+	public static int getBandCount(int n, int k) {
+		return Math.max(1, Math.min(n, k));
+	}
+
+	/**
+	 * Processes the index range [0, n) in parallel, using the default number of bands.
+	 */
+	public static int forBands(int n, BandTask task) {
+		return forBands(n, getThreadCount(), task);
+	}
+
+	/**
+	 * Processes the index range [0, n) in parallel by splitting it into (at most)
+	 * k bands of (almost) equal size.
+	 * @return the number of bands used
+	 */
+	public static int forBands(int n, int k, final BandTask task) {
+		final int nb = getBandCount(n, k);
+		if (nb == 1) {
+			task.run(0, 0, n);
+			return 1;
+		}
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[nb];
+		for (int b = 1; b < nb; b++) {
+			final int band = b;
+			final int from = (int) ((long) n * b / nb);
+			final int to = (int) ((long) n * (b + 1) / nb);
+			threads[b] = new Thread() {
+				public void run() {
+					try {
+						task.run(band, from, to);
+					} catch (Throwable e) {
+						synchronized (failure) {
+							if (failure[0] == null) failure[0] = e;
+						}
+					}
+				}
+			};
+			threads[b].start();
+		}
+		try {
+			task.run(0, 0, (int) ((long) n / nb));	// first band is done by the calling thread
+		}
+		finally {
+			for (int b = 1; b < nb; b++) {
+				boolean interrupted = false;
+				while (threads[b].isAlive()) {
+					try {
+						threads[b].join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) Thread.currentThread().interrupt();
+			}
+		}
+		if (failure[0] instanceof RuntimeException)
+			throw (RuntimeException) failure[0];
+		if (failure[0] instanceof Error)
+			throw (Error) failure[0];
+		if (failure[0] != null)
+			throw new RuntimeException(failure[0]);
+		return nb;
+	}
+
+}
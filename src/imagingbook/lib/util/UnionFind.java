@@ -0,0 +1,122 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.lib.util;
+
+/**
+ * A growable union-find structure (disjoint-set forest) over the int
+ * elements 0,...,size()-1, as used for resolving label equivalences in
+ * region labeling. Sets are merged such that the smallest element of each
+ * set is its root; thus, if elements are created in raster order, the root
+ * of each set is the element encountered first. Paths are shortened by
+ * path halving in {@link #find(int)}.
+ */
+public class UnionFind {
+	private int[] parent;	// parent[a] == a for the root of a set
+	private int size = 0;
+
+	/**
+	 * Creates an empty structure.
+	 */
+	public UnionFind() {
+		parent = new int[256];
+	}
+
+	/**
+	 * Creates a structure with the n singleton sets {0},...,{n-1}.
+	 * @param n the number of elements
+	 */
+	public UnionFind(int n) {
+		parent = new int[Math.max(n, 1)];
+		for (int a = 0; a < n; a++) {
+			parent[a] = a;
+		}
+		size = n;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a new singleton set.
+	 * @return the new element
+	 */
+	public int add() {
+		makeSet(size);
+		return size - 1;
+	}
+
+	/**
+	 * Makes a a singleton set, which also (re-)initializes an existing 
+	 * element a (which must not be the parent of other elements).
+	 * Missing elements below a are added as singleton sets.
+	 * @param a the element
+	 */
+	public void makeSet(int a) {
+		if (a >= parent.length) {
+			int[] p = new int[Math.max(2 * parent.length, a + 1)];
+			System.arraycopy(parent, 0, p, 0, size);
+			parent = p;
+		}
+		for (int k = size; k < a; k++) {
+			parent[k] = k;
+		}
+		parent[a] = a;
+		size = Math.max(size, a + 1);
+	}
+
+	/**
+	 * Returns the root of the set containing a (with path halving).
+	 * @param a the element
+	 * @return the root element
+	 */
+	public int find(int a) {
+		while (parent[a] != a) {
+			parent[a] = parent[parent[a]];
+			a = parent[a];
+		}
+		return a;
+	}
+
+	public boolean isRoot(int a) {
+		return parent[a] == a;
+	}
+
+	/**
+	 * Merges the sets containing a and b, the smaller root becomes the
+	 * root of the merged set.
+	 * @param a the first element
+	 * @param b the second element
+	 * @return the root of the merged set
+	 */
+	public int union(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra < rb) {
+			parent[rb] = ra;
+			return ra;
+		}
+		else {
+			parent[ra] = rb;
+			return rb;
+		}
+	}
+
+	/**
+	 * Attaches root b to root a, for callers implementing their own
+	 * merging rule (e.g., union by size).
+	 * @param a the root of the first set, becomes the root of the merged set
+	 * @param b the root of the second set
+	 */
+	public void link(int a, int b) {
+		parent[b] = a;
+	}
+
+}
@@ -16,6 +16,8 @@ import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 
 import java.awt.Point;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Stack;
@@ -33,6 +35,16 @@ public class CannyEdgeDetector extends ColorEdgeDetector {
 		public float loThr  = 5.0f;			//  5% of max. edge magnitude
 		public boolean normGradMag = true;	// normalize gradient magnitude
 		
+		public Parameters() {
+		}
+		
+		public Parameters(Parameters p) {	// copy constructor
+			this.gSigma = p.gSigma;
+			this.hiThr = p.hiThr;
+			this.loThr = p.loThr;
+			this.normGradMag = p.normGradMag;
+		}
+		
 		public boolean isInValid () { // returns true if any invalid condition is found
 			return gSigma < 0.1f || loThr >hiThr;
 		}
@@ -60,33 +72,112 @@ public class CannyEdgeDetector extends ColorEdgeDetector {
 		findEdges();
 	}
 	
+	// Constructor used for multi-scale detection (channels are already smoothed):
+	private CannyEdgeDetector(ImageProcessor ip, FloatProcessor[] smoothed, Parameters params) {
+		this.params = params;
+		this.I = ip;
+		findEdges(smoothed);
+	}
+	
+	/**
+	 * Runs the Canny edge detector on the same image at multiple scales.
+	 * Instead of smoothing the original image from scratch for every scale,
+	 * the Gaussian smoothing is applied incrementally (cascaded) from the
+	 * smallest to the largest sigma, i.e., each scale level is obtained from 
+	 * the previous one by filtering with sigma_d = sqrt(sigma_k^2 - sigma_{k-1}^2),
+	 * which requires much smaller filter kernels. All other settings are taken 
+	 * from the supplied parameter object (its gSigma value is ignored).
+	 * @param ip the image to be processed (grayscale or RGB)
+	 * @param sigmas Gaussian scale values (in any order)
+	 * @param params parameter object (not modified)
+	 * @return a list of edge detectors, one for each sigma (in the order given)
+	 */
+	public static List<CannyEdgeDetector> makeMultiScale(ImageProcessor ip, float[] sigmas, Parameters params) {
+		// process scales in order of increasing sigma:
+		Integer[] order = new Integer[sigmas.length];
+		for (int k = 0; k < sigmas.length; k++) {
+			order[k] = k;
+		}
+		final float[] s = sigmas;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer k1, Integer k2) {
+				return Float.compare(s[k1], s[k2]);
+			}
+		});
+		
+		CannyEdgeDetector[] detectors = new CannyEdgeDetector[sigmas.length];
+		FloatProcessor[] G = getFloatChannels(ip);	// current smoothed channels
+		double sigmaPrev = 0;
+		for (int k : order) {
+			Parameters pk = new Parameters(params);
+			pk.gSigma = sigmas[k];
+			if (pk.isInValid()) throw new IllegalArgumentException();
+			double sigmaD = Math.sqrt(pk.gSigma * pk.gSigma - sigmaPrev * sigmaPrev);
+			FloatProcessor[] Gk = new FloatProcessor[G.length];
+			if ((int) (3.5 * sigmaD) > 0) {	// see makeGaussKernel1d()
+				smoothChannels(G, sigmaD);
+				sigmaPrev = pk.gSigma;
+				for (int i = 0; i < G.length; i++) {	// G is kept for the next scale
+					Gk[i] = (FloatProcessor) G[i].duplicate();
+				}
+			}
+			else {
+				// the kernel for sigmaD would be [1] (no smoothing), thus this scale
+				// is smoothed directly and sigmaD is carried over to the next scale
+				Gk = getFloatChannels(ip);
+				smoothChannels(Gk, pk.gSigma);
+			}
+			detectors[k] = new CannyEdgeDetector(ip, Gk, pk);
+		}
+		return Arrays.asList(detectors);
+	}
+	
 	// do the work ...
 	void findEdges() {
+		FloatProcessor[] G = getFloatChannels(I);
+		smoothChannels(G, params.gSigma);
+		findEdges(G);
+	}
+	
+	void findEdges(FloatProcessor[] G) {	// G = smoothed channels (modified)
 		M = I.getWidth();
 		N = I.getHeight();
-		if (I instanceof ColorProcessor) 
-			makeGradientsAndMagnitudeColor();
+		if (G.length == 3) 
+			makeGradientsAndMagnitudeColor(G);
 		else
-			makeGradientsAndMagnitudeGray();
+			makeGradientsAndMagnitudeGray(G[0]);
 		nonMaxSuppression();
 		detectAndTraceEdges();
 	}
 	
 	//---------------------------------------------------------------------------
 	
-	void makeGradientsAndMagnitudeGray() {
-		FloatProcessor If = (I instanceof FloatProcessor) ? 
+	// returns the channels of I as (new) float images
+	static FloatProcessor[] getFloatChannels(ImageProcessor I) {
+		if (I instanceof ColorProcessor) 
+			return rgbToFloatChannels((ColorProcessor) I);
+		else {
+			FloatProcessor If = (I instanceof FloatProcessor) ? 
 				(FloatProcessor) I.duplicate() :
 				(FloatProcessor) I.convertToFloat();
-				
-		// apply a separable Gaussian filter to I
-		float[] gaussKernel = makeGaussKernel1d(params.gSigma);
+			return new FloatProcessor[] {If};
+		}
+	}
+	
+	// apply a separable Gaussian filter to each channel (in place)
+	static void smoothChannels(FloatProcessor[] channels, double sigma) {
+		float[] gaussKernel = makeGaussKernel1d(sigma);
 		Convolver conv = new Convolver();
 		conv.setNormalize(true);
-		conv.convolve(If, gaussKernel, gaussKernel.length, 1);
-		conv.convolve(If, gaussKernel, 1, gaussKernel.length);
-		
+		for (FloatProcessor fp : channels) {
+			conv.convolve(fp, gaussKernel, gaussKernel.length, 1);
+			conv.convolve(fp, gaussKernel, 1, gaussKernel.length);
+		}
+	}
+	
+	void makeGradientsAndMagnitudeGray(FloatProcessor If) {	// If is smoothed
 		// calculate the gradients in X- and Y-direction
+		Convolver conv = new Convolver();
 		Ex = If;
 		Ey = (FloatProcessor) If.duplicate();
 		float[] gradKernel = {-0.5f, 0, 0.5f};
@@ -113,24 +204,16 @@ public class CannyEdgeDetector extends ColorEdgeDetector {
 			Emag.multiply(100.0/emax);
 	}
 	
-	void makeGradientsAndMagnitudeColor() {
-		FloatProcessor[] Irgb = rgbToFloatChannels((ColorProcessor)I);
+	void makeGradientsAndMagnitudeColor(FloatProcessor[] Irgb) {	// Irgb is smoothed
 		FloatProcessor[] Ixrgb = new FloatProcessor[3];
 		FloatProcessor[] Iyrgb = new FloatProcessor[3];
-		
-		// apply a separable Gaussian filter to each RGB channel
-		float[] gaussKernel = makeGaussKernel1d(params.gSigma);
-		Convolver conv = new Convolver();
-		conv.setNormalize(true);
 		for (int i=0; i<Irgb.length; i++) {
-			FloatProcessor I = Irgb[i];
-			conv.convolve(I, gaussKernel, gaussKernel.length, 1);
-			conv.convolve(I, gaussKernel, 1, gaussKernel.length);
-			Ixrgb[i] = I;
-			Iyrgb[i] = (FloatProcessor) I.duplicate();
+			Ixrgb[i] = Irgb[i];
+			Iyrgb[i] = (FloatProcessor) Irgb[i].duplicate();
 		}
 		
 		// calculate the gradients in X- and Y-direction for each RGB channel
+		Convolver conv = new Convolver();
 		float[] gradKernel = {-0.5f, 0, 0.5f};
 		conv.setNormalize(false);
 		for (int i=0; i<Irgb.length; i++) {
@@ -325,7 +408,7 @@ public class CannyEdgeDetector extends ColorEdgeDetector {
 	
 	//---------------------------------------------------------------------------
 
-	float[] makeGaussKernel1d(double sigma) {
+	static float[] makeGaussKernel1d(double sigma) {
 		// make 1D Gauss filter kernel large enough
 		int rad = (int) (3.5 * sigma);
 		int size = rad + rad + 1;
@@ -342,7 +425,7 @@ public class CannyEdgeDetector extends ColorEdgeDetector {
 	}
 	
 	// extract RGB channels of 'cp' as 3 float processors
-	FloatProcessor[] rgbToFloatChannels(ColorProcessor cp) {
+	static FloatProcessor[] rgbToFloatChannels(ColorProcessor cp) {
 		int w = cp.getWidth();
 		int h = cp.getHeight();
 		FloatProcessor rp = new FloatProcessor(w, h);
@@ -14,10 +14,14 @@ import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import imagingbook.lib.image.Process;
+import imagingbook.lib.util.Parallel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Vector;
+import java.util.PriorityQueue;
 
 public class HarrisCornerDetector {
 	
@@ -30,6 +34,8 @@ public class HarrisCornerDetector {
 		public double dmin = 10;
 		public int border = 20;
 		public boolean doCleanUp = true;
+		public int maxCorners = 0;		// max. number of corners returned (0 = no limit)
+		public boolean doFused = false;	// compute the corner response in a single parallel pass
 	}
 	
 	private final Parameters params;
@@ -57,9 +63,14 @@ public class HarrisCornerDetector {
 	}
 	
 	public void findCorners(){
-		makeDerivatives();
-		makeCrf();	//corner response function (CRF)
-		corners = collectCorners(params.border);
+		if (params.doFused) {
+			corners = collectCornersFused(params.border);
+		}
+		else {
+			makeDerivatives();
+			makeCrf();	//corner response function (CRF)
+			corners = collectCorners(params.border);
+		}
 		if (params.doCleanUp) {
 			corners = cleanupCorners(corners);
 		}
@@ -112,47 +123,314 @@ public class HarrisCornerDetector {
 	}
 	
 	private List<Corner> collectCorners(int border) {
-		List<Corner> cornerList = new Vector<Corner>(1000);
 		final int w = Q.getWidth();
 		final int h = Q.getHeight();
 		final int threshold = params.threshold;
+		CornerCollector collector = new CornerCollector();
 		float[] Qpix = (float[]) Q.getPixels();
 		for (int v = border; v < h - border; v++) {
 			for (int u = border; u < w - border; u++) {
 				float q = Qpix[v * w + u];
 				if (q > threshold && isLocalMax(Q, u, v)) {
-					Corner c = new Corner(u, v, q);
-					cornerList.add(c);
+					collector.add(new Corner(u, v, q));
 				}
 			}
 		}
-		Collections.sort(cornerList);	// sort corners by descending q-value
-		return cornerList;
+		return collector.getCorners();
 	}
 	
+	/*
+	 * Collects corners (supplied in raster order) and returns them sorted by 
+	 * descending q-value. Without cleanup, only the strongest maxCorners corners 
+	 * can survive, so these are kept in a bounded heap.
+	 */
+	private class CornerCollector {
+		final int nmax = (params.doCleanUp) ? 0 : params.maxCorners;
+		final List<Corner> cornerList = new ArrayList<Corner>(1000);
+		final PriorityQueue<Corner> heap = (nmax > 0) ?
+				new PriorityQueue<Corner>(nmax + 1, weakestFirst) : null;
+		
+		void add(Corner c) {
+			if (heap == null) {
+				cornerList.add(c);
+			}
+			else if (heap.size() < nmax) {
+				heap.add(c);
+			}
+			else if (weakestFirst.compare(c, heap.peek()) > 0) {
+				heap.poll();	// replace the currently weakest corner
+				heap.add(c);
+			}
+		}
+		
+		List<Corner> getCorners() {
+			if (heap != null) {
+				cornerList.addAll(heap);
+				Collections.sort(cornerList, Collections.reverseOrder(weakestFirst));
+			}
+			else {
+				Collections.sort(cornerList);	// sort corners by descending q-value
+			}
+			return cornerList;
+		}
+	}
+	
+	// Orders corners by ascending q-value; among corners with the same q-value, the one
+	// found later in raster order comes first (i.e., is considered weaker). The reverse
+	// of this order is the same as the stable sort by descending q used in collectCorners().
+	private static final Comparator<Corner> weakestFirst = new Comparator<Corner>() {
+		public int compare(Corner c1, Corner c2) {
+			if (c1.q < c2.q) return -1;
+			if (c1.q > c2.q) return 1;
+			if (c1.v != c2.v) return (c1.v > c2.v) ? -1 : 1;
+			if (c1.u != c2.u) return (c1.u > c2.u) ? -1 : 1;
+			return 0;
+		}
+	};
+	
+	/*
+	 * Greedy suppression of corners that are closer than dmin to a stronger corner.
+	 * Corners are visited in order of descending q-value and a corner is kept only
+	 * if no previously kept corner lies within distance dmin. Kept corners are 
+	 * registered in a uniform grid with cell size dmin (at least 1, to limit the
+	 * grid size), such that only the 3x3 neighboring cells must be checked.
+	 * This gives the same result as comparing every pair of corners but at
+	 * (roughly) linear cost.
+	 */
 	private List<Corner> cleanupCorners(List<Corner> corners){
 		// corners are assumed to be sorted by descending q-value
-		double dmin2 = params.dmin * params.dmin;
-		Corner[] cornerArray = new Corner[corners.size()];
-		cornerArray = corners.toArray(cornerArray);
-		List<Corner> goodCorners = new Vector<Corner>(corners.size());
-		for (int i = 0; i < cornerArray.length; i++) {
-			if (cornerArray[i] != null){
-				Corner c1 = cornerArray[i];
-				goodCorners.add(c1);
-				//delete all remaining corners close to c
-				for (int j = i + 1; j < cornerArray.length; j++) {
-					if (cornerArray[j] != null){
-						Corner c2 = cornerArray[j];
-						if (c1.dist2(c2) < dmin2)
-							cornerArray[j] = null;   //delete corner c2
+		final int nmax = (params.maxCorners > 0) ? params.maxCorners : corners.size();
+		final double dmin = params.dmin;
+		final double dmin2 = dmin * dmin;
+		if (dmin <= 0) {	// nothing to suppress
+			return new ArrayList<Corner>(corners.subList(0, Math.min(nmax, corners.size())));
+		}
+		
+		final double cs = Math.max(dmin, 1);	// cell size
+		final int gw = (int) (ipOrig.getWidth()  / cs) + 1;	// grid size
+		final int gh = (int) (ipOrig.getHeight() / cs) + 1;
+		int[] cellHead = new int[gw * gh];		// first kept corner in each cell (or -1)
+		Arrays.fill(cellHead, -1);
+		int[] cellNext = new int[corners.size()]; // next kept corner in the same cell (or -1)
+		
+		Corner[] cornerArray = corners.toArray(new Corner[0]);
+		List<Corner> goodCorners = new ArrayList<Corner>(Math.min(nmax, cornerArray.length));
+		for (int i = 0; i < cornerArray.length && goodCorners.size() < nmax; i++) {
+			Corner c1 = cornerArray[i];
+			int gu = (int) (c1.u / cs);
+			int gv = (int) (c1.v / cs);
+			boolean keep = true;
+			// check all kept corners in the 3x3 neighborhood of cell (gu,gv)
+			for (int nv = Math.max(gv - 1, 0); keep && nv <= Math.min(gv + 1, gh - 1); nv++) {
+				for (int nu = Math.max(gu - 1, 0); keep && nu <= Math.min(gu + 1, gw - 1); nu++) {
+					for (int j = cellHead[nv * gw + nu]; j >= 0; j = cellNext[j]) {
+						if (c1.dist2(cornerArray[j]) < dmin2) {
+							keep = false;	// c1 is too close to a stronger corner
+							break;
+						}
 					}
 				}
 			}
+			if (keep) {
+				goodCorners.add(c1);
+				int cell = gv * gw + gu;
+				cellNext[i] = cellHead[cell];
+				cellHead[cell] = i;
+			}
 		}
 		return goodCorners;
 	}
 	
+	/*
+	 * Fused alternative to makeDerivatives(), makeCrf() and collectCorners().
+	 * The image rows are split into bands which are processed in parallel, each
+	 * band in tiles of TILE_ROWS rows. For every tile, the derivatives and their 
+	 * products are calculated only for the rows required, smoothed and combined to 
+	 * the corner response, which is immediately checked for local maxima. No
+	 * full-size intermediate images (A, B, C, Q) are created. The same filters and 
+	 * border handling (nearest border pixel) are used as in the separate steps.
+	 */
+	private List<Corner> collectCornersFused(int border) {
+		final int w = ipOrig.getWidth();
+		final int h = ipOrig.getHeight();
+		final float[] I = (ipOrig instanceof FloatProcessor) ?
+				(float[]) ipOrig.getPixels() :
+				(float[]) ipOrig.convertToFloat().getPixels();
+		// range of rows/columns where local maxima are searched:
+		final int v0 = Math.max(border, 1);
+		final int v1 = Math.min(h - border, h - 1);
+		final int u0 = Math.max(border, 1);
+		final int u1 = Math.min(w - border, w - 1);
+		CornerCollector collector = new CornerCollector();
+		if (v1 <= v0 || u1 <= u0) {
+			return collector.getCorners();
+		}
+		final int nb = Parallel.getBandCount(v1 - v0, Parallel.getThreadCount());
+		final List<List<Corner>> bandCorners = new ArrayList<List<Corner>>(nb);
+		for (int b = 0; b < nb; b++) {
+			bandCorners.add(null);
+		}
+		Parallel.forBands(v1 - v0, nb, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				CrfTiler tiler = new CrfTiler(I, w, h);
+				List<Corner> cl = tiler.findCorners(v0 + from, v0 + to, u0, u1);
+				synchronized (bandCorners) {
+					bandCorners.set(band, cl);
+				}
+			}
+		});
+		for (List<Corner> cl : bandCorners) {	// bands are in raster order
+			for (Corner c : cl) {
+				collector.add(c);
+			}
+		}
+		return collector.getCorners();
+	}
+	
+	static final int TILE_ROWS = 64;
+	
+	/*
+	 * Calculates the corner response function for one tile of image rows at a time,
+	 * using row buffers that are reused for all tiles of a band.
+	 */
+	private class CrfTiler {
+		final float[] I;		// original image (as float)
+		final int w, h;
+		final float alpha = (float) params.alpha;
+		final float[][] pRow = new float[3][];	// cached rows of vertically prefiltered image
+		final int[] pRowIdx = {-1, -1, -1};
+		final float[] tmp;
+		final float[] Abuf, Bbuf, Cbuf;	// (unsmoothed) gradient products
+		final float[] Qbuf;				// corner response
+		final float[] aRow, bRow, cRow;
+		
+		CrfTiler(float[] I, int w, int h) {
+			this.I = I;
+			this.w = w;
+			this.h = h;
+			int nP = TILE_ROWS + 2 + 2 * (bfilt.length / 2); 
+			for (int i = 0; i < 3; i++) {
+				pRow[i] = new float[w];
+			}
+			tmp = new float[w];
+			Abuf = new float[nP * w];
+			Bbuf = new float[nP * w];
+			Cbuf = new float[nP * w];
+			Qbuf = new float[(TILE_ROWS + 2) * w];
+			aRow = new float[w];
+			bRow = new float[w];
+			cRow = new float[w];
+		}
+		
+		// finds local maxima in rows [vFrom, vTo) and columns [uFrom, uTo)
+		List<Corner> findCorners(int vFrom, int vTo, int uFrom, int uTo) {
+			List<Corner> cornerList = new ArrayList<Corner>();
+			final int threshold = params.threshold;
+			for (int t0 = vFrom; t0 < vTo; t0 += TILE_ROWS) {
+				int t1 = Math.min(t0 + TILE_ROWS, vTo);
+				makeCrf(t0 - 1, t1);	// Q rows t0-1,...,t1 (needed for local max. test)
+				for (int v = t0; v < t1; v++) {
+					final int i1 = (v - t0 + 1) * w;
+					final int i0 = i1 - w;
+					final int i2 = i1 + w;
+					for (int u = uFrom; u < uTo; u++) {
+						float cp = Qbuf[i1 + u];
+						if (cp > threshold &&
+							cp >= Qbuf[i0 + u - 1] && cp >= Qbuf[i0 + u] && cp >= Qbuf[i0 + u + 1] &&
+							cp >= Qbuf[i1 + u - 1] &&                       cp >= Qbuf[i1 + u + 1] && 
+							cp >= Qbuf[i2 + u - 1] && cp >= Qbuf[i2 + u] && cp >= Qbuf[i2 + u + 1]) {
+							cornerList.add(new Corner(u, v, cp));
+						}
+					}
+				}
+			}
+			return cornerList;
+		}
+		
+		// calculates the corner response for rows qa,...,qb (inclusive) into Qbuf
+		void makeCrf(int qa, int qb) {
+			final int rb = bfilt.length / 2;
+			final int pa = Math.max(qa - rb, 0);
+			final int pb = Math.min(qb + rb, h - 1);
+			for (int r = pa; r <= pb; r++) {
+				makeProducts(r, (r - pa) * w);
+			}
+			for (int q = qa; q <= qb; q++) {
+				// vertical smoothing of products
+				for (int u = 0; u < w; u++) {
+					double a = 0, b = 0, c = 0;
+					for (int k = 0; k < bfilt.length; k++) {
+						int i = (clamp(q + k - rb, h) - pa) * w + u;
+						a = a + bfilt[k] * Abuf[i];
+						b = b + bfilt[k] * Bbuf[i];
+						c = c + bfilt[k] * Cbuf[i];
+					}
+					aRow[u] = (float) a; bRow[u] = (float) b; cRow[u] = (float) c;
+				}
+				// horizontal smoothing and corner response
+				final int iq = (q - qa) * w;
+				for (int u = 0; u < w; u++) {
+					double sa = 0, sb = 0, sc = 0;
+					for (int k = 0; k < bfilt.length; k++) {
+						int i = clamp(u + k - rb, w);
+						sa = sa + bfilt[k] * aRow[i];
+						sb = sb + bfilt[k] * bRow[i];
+						sc = sc + bfilt[k] * cRow[i];
+					}
+					float a = (float) sa, b = (float) sb, c = (float) sc;
+					float det = a * b - c * c;
+					float trace = a + b;
+					Qbuf[iq + u] = det - alpha * (trace * trace);
+				}
+			}
+		}
+		
+		// calculates the gradient products for image row r, stored at offset i0
+		void makeProducts(int r, int i0) {
+			// vertical derivative (same as Ix in makeDerivatives())
+			float[] p0 = getPrefilteredRow(clamp(r - 1, h));
+			float[] p1 = getPrefilteredRow(clamp(r, h));
+			float[] p2 = getPrefilteredRow(clamp(r + 1, h));
+			// horizontal prefilter (same as Iy in makeDerivatives())
+			final int iI = r * w;
+			for (int u = 0; u < w; u++) {
+				tmp[u] = filter3(pfilt, I[iI + clamp(u - 1, w)], I[iI + u], I[iI + clamp(u + 1, w)]);
+			}
+			for (int u = 0; u < w; u++) {
+				float ix = filter3(dfilt, p0[u], p1[u], p2[u]);
+				float iy = filter3(dfilt, tmp[clamp(u - 1, w)], tmp[u], tmp[clamp(u + 1, w)]);
+				Abuf[i0 + u] = ix * ix;
+				Bbuf[i0 + u] = iy * iy;
+				Cbuf[i0 + u] = ix * iy;
+			}
+		}
+		
+		// returns row r of the vertically prefiltered image (rows are cached)
+		float[] getPrefilteredRow(int r) {
+			int slot = r % 3;
+			float[] p = pRow[slot];
+			if (pRowIdx[slot] != r) {
+				final int i0 = clamp(r - 1, h) * w;
+				final int i1 = r * w;
+				final int i2 = clamp(r + 1, h) * w;
+				for (int u = 0; u < w; u++) {
+					p[u] = filter3(pfilt, I[i0 + u], I[i1 + u], I[i2 + u]);
+				}
+				pRowIdx[slot] = r;
+			}
+			return p;
+		}
+	}
+	
+	// applies the 3-element filter kernel k to the values a, b, c (calculated in double)
+	private static float filter3(float[] k, float a, float b, float c) {
+		return (float) ((double) k[0] * a + (double) k[1] * b + (double) k[2] * c);
+	}
+	
+	private static int clamp(int i, int n) {	// limits i to [0, n-1]
+		return (i < 0) ? 0 : (i >= n) ? n - 1 : i;
+	}
+	
 	void printCornerPoints(List<Corner> crf){
 		int i = 0;
 		for (Corner ipt: crf){
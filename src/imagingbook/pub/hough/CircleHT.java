@@ -0,0 +1,433 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.hough;
+
+import ij.IJ;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import imagingbook.lib.util.Parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hough transform for circles with gradient-constrained voting.
+ * The center of a circle passing through an edge pixel lies on the line through
+ * this pixel along its gradient direction. Thus each edge pixel votes only along
+ * a single ray (in both directions, at distances rMin,...,rMax) into a 2D
+ * accumulator of circle centers, which has the size of the image. For each
+ * significant peak of the center accumulator, the circle radius is then found
+ * from a 1D histogram of the distances of the (gradient-consistent) edge pixels
+ * to the center. Memory is O(image size), time is O(edge pixels x radius range).
+ */
+public class CircleHT {
+
+	public static class Parameters {
+		/** Minimum circle radius (in pixels) */
+		public int rMin = 10;
+		/** Maximum circle radius (in pixels) */
+		public int rMax = 100;
+		/** Min. number of votes (in a 3x3 neighborhood) of a circle center */
+		public int minVotes = 20;
+		/** Min. fraction of the circumference covered by edge pixels */
+		public double minCoverage = 0.25;
+		/** Min. distance between circle centers (in pixels, 0 = rMin) */
+		public double minDist = 0;
+		/** Max. deviation of the edge gradient from the radial direction (in radians) */
+		public double angleTol = 0.2;
+	}
+
+	private final Parameters params;
+	private final int width, height;
+	private final int n;				// number of edge pixels
+	private final int[] us, vs;			// edge pixel positions (in raster order)
+	private final float[] cs, sn;		// gradient direction (cos, sin) of edge pixels
+	private final int[] rowStart;		// edge pixels in row v are at rowStart[v],...,rowStart[v+1]-1
+	private final int[] centerArray;	// center accumulator (3x3 sums), index u + v * width
+	private final List<HoughCircle> circles;
+
+	// --------------  public constructor(s) ------------------------
+
+	public CircleHT(ByteProcessor ip, FloatProcessor orientation) {
+		this(ip, orientation, new Parameters());
+	}
+
+	/**
+	 * @param ip binary edge image (foreground pixels > 0)
+	 * @param orientation gradient orientation image (same size as ip, in radians),
+	 * e.g., as obtained from CannyEdgeDetector.getEdgeOrientation()
+	 * @param params parameter object
+	 */
+	public CircleHT(ByteProcessor ip, FloatProcessor orientation, Parameters params) {
+		if (orientation.getWidth() != ip.getWidth() || orientation.getHeight() != ip.getHeight())
+			throw new IllegalArgumentException("orientation image must be of same size as edge image");
+		if (params.rMin < 1 || params.rMax < params.rMin)
+			throw new IllegalArgumentException("invalid radius range");
+		this.params = params;
+		this.width = ip.getWidth();
+		this.height = ip.getHeight();
+		// collect the edge pixels:
+		this.rowStart = new int[height + 1];
+		for (int v = 0; v < height; v++) {
+			rowStart[v + 1] = rowStart[v];
+			for (int u = 0; u < width; u++) {
+				if (ip.get(u, v) > 0) rowStart[v + 1]++;
+			}
+		}
+		this.n = rowStart[height];
+		this.us = new int[n];
+		this.vs = new int[n];
+		this.cs = new float[n];
+		this.sn = new float[n];
+		int i = 0;
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				if (ip.get(u, v) > 0) {
+					double theta = orientation.getf(u, v);
+					us[i] = u;
+					vs[i] = v;
+					cs[i] = (float) Math.cos(theta);
+					sn[i] = (float) Math.sin(theta);
+					i++;
+				}
+			}
+		}
+		this.centerArray = makeCenterArray(fillCenterArray());
+		this.circles = findCircles();
+	}
+
+	// --------------  public methods ------------------------
+
+	/**
+	 * Returns (at most) maxCnt of the detected circles, sorted by decreasing
+	 * number of supporting edge pixels.
+	 */
+	public List<HoughCircle> getMaxCircles(int maxCnt) {
+		if (circles.size() <= maxCnt)
+			return new ArrayList<HoughCircle>(circles);
+		else
+			return new ArrayList<HoughCircle>(circles.subList(0, Math.max(0, maxCnt)));
+	}
+
+	// We use a FloatProcessor since accumulator values may be large.
+	public FloatProcessor getAccumulatorImage() {
+		FloatProcessor fp = new FloatProcessor(width, height);
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				fp.setf(u, v, centerArray[u + v * width]);
+			}
+		}
+		fp.resetMinAndMax();
+		return fp;
+	}
+
+	// --------------  nonpublic methods ------------------------
+
+	/*
+	 * The accumulator rows are split into bands which are filled in parallel.
+	 * Each ray (edge pixel i and direction sign) is assigned to the bands of
+	 * the rows it can reach between radius rMin and rMax, and each band traverses
+	 * only the part of its rays that falls into its own rows. Thus all bands share
+	 * a single accumulator and the total work is (roughly) the number of votes.
+	 */
+	private int[] fillCenterArray() {
+		IJ.showStatus("filling accumulator ...");
+		final int nb = Parallel.getBandCount(height, Parallel.getThreadCount());
+		final int[] bandStart = new int[nb + 1];	// first row of each band
+		for (int b = 0; b <= nb; b++) {
+			bandStart[b] = (int) ((long) height * b / nb);
+		}
+		// ray 2 * i + s is edge pixel i with sign = 1 (s = 0) or -1 (s = 1):
+		final int[] firstBand = new int[2 * n];
+		final int[] lastBand = new int[2 * n];
+		final int[] count = new int[nb];
+		for (int k = 0; k < 2 * n; k++) {
+			int i = k / 2;
+			double dy = ((k & 1) == 0) ? sn[i] : -sn[i];
+			int va = (int) Math.rint(vs[i] + params.rMin * dy);
+			int vb = (int) Math.rint(vs[i] + params.rMax * dy);
+			firstBand[k] = getBand(Math.min(va, vb), bandStart);
+			lastBand[k] = getBand(Math.max(va, vb), bandStart);
+			for (int b = firstBand[k]; b <= lastBand[k]; b++) {
+				count[b]++;
+			}
+		}
+		final int[][] rays = new int[nb][];
+		for (int b = 0; b < nb; b++) {
+			rays[b] = new int[count[b]];
+			count[b] = 0;
+		}
+		for (int k = 0; k < 2 * n; k++) {
+			for (int b = firstBand[k]; b <= lastBand[k]; b++) {
+				rays[b][count[b]++] = k;
+			}
+		}
+		final int[] A = new int[width * height];
+		Parallel.forBands(nb, nb, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int b = from; b < to; b++) {
+					for (int k : rays[b]) {
+						voteRay(A, k / 2, ((k & 1) == 0) ? 1 : -1, bandStart[b], bandStart[b + 1]);
+					}
+				}
+			}
+		});
+		return A;
+	}
+
+	// returns the band containing row v (clamped to the image)
+	private static int getBand(int v, int[] bandStart) {
+		int b = 0;
+		while (b < bandStart.length - 2 && v >= bandStart[b + 1])
+			b++;
+		return b;
+	}
+
+	/*
+	 * Edge pixel i votes along its gradient direction (sign = 1) or opposite to it
+	 * (sign = -1), only into the accumulator rows v0,...,v1-1.
+	 */
+	private void voteRay(int[] A, int i, int sign, int v0, int v1) {
+		final double dx = sign * cs[i];
+		final double dy = sign * sn[i];
+		int r0 = params.rMin;
+		int r1 = params.rMax;
+		if (dy == 0) {
+			if (vs[i] < v0 || vs[i] >= v1)
+				return;
+		}
+		else {	// radius range that (roughly) maps to rows v0,...,v1-1, the rows are checked below
+			double ra = (v0 - 0.5 - vs[i]) / dy;
+			double rb = (v1 - 0.5 - vs[i]) / dy;
+			r0 = (int) Math.max(r0, Math.floor(Math.min(ra, rb)) - 1);
+			r1 = (int) Math.min(r1, Math.ceil(Math.max(ra, rb)) + 1);
+		}
+		for (int r = r0; r <= r1; r++) {
+			int u = (int) Math.rint(us[i] + r * dx);
+			int v = (int) Math.rint(vs[i] + r * dy);
+			if (u < 0 || u >= width || v < 0 || v >= height)
+				break;	// the ray has left the image
+			if (v >= v0 && v < v1)
+				A[u + v * width]++;
+		}
+	}
+
+	// sums the votes over 3x3 neighborhoods, to compensate for rounding errors
+	private int[] makeCenterArray(final int[] A) {
+		final int[] C = new int[width * height];
+		Parallel.forBands(height, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int v = from; v < to; v++) {
+					for (int u = 0; u < width; u++) {
+						int sum = 0;
+						for (int j = Math.max(0, v - 1); j <= Math.min(height - 1, v + 1); j++) {
+							for (int i = Math.max(0, u - 1); i <= Math.min(width - 1, u + 1); i++) {
+								sum += A[i + j * width];
+							}
+						}
+						C[u + v * width] = sum;
+					}
+				}
+			}
+		});
+		return C;
+	}
+
+	private List<HoughCircle> findCircles() {
+		IJ.showStatus("finding circles ...");
+		// collect local maxima of the center accumulator, strongest first:
+		List<int[]> peaks = new ArrayList<int[]>();
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				int c = centerArray[u + v * width];
+				if (c >= params.minVotes && isLocalMax(u, v)) {
+					peaks.add(new int[] {c, u, v});
+				}
+			}
+		}
+		Collections.sort(peaks, new Comparator<int[]>() {
+			public int compare(int[] p1, int[] p2) {
+				return p2[0] - p1[0];
+			}
+		});
+		// suppress peaks too close to a stronger one:
+		final double minDist = (params.minDist > 0) ? params.minDist : params.rMin;
+		final List<int[]> centers = new ArrayList<int[]>();
+		for (int[] p : peaks) {
+			boolean isolated = true;
+			for (int[] q : centers) {
+				double dx = p[1] - q[1], dy = p[2] - q[2];
+				if (dx * dx + dy * dy < minDist * minDist) {
+					isolated = false;
+					break;
+				}
+			}
+			if (isolated) centers.add(p);
+		}
+		// estimate the radius of each candidate center in parallel:
+		final HoughCircle[] result = new HoughCircle[centers.size()];
+		Parallel.forBands(centers.size(), new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				int[] hist = new int[params.rMax + 2];
+				for (int k = from; k < to; k++) {
+					int[] p = centers.get(k);
+					result[k] = makeCircle(p[1], p[2], p[0], hist);
+				}
+			}
+		});
+		List<HoughCircle> circleList = new ArrayList<HoughCircle>();
+		for (HoughCircle hc : result) {
+			if (hc != null) circleList.add(hc);
+		}
+		Collections.sort(circleList);	// stable, i.e., strongest center first for equal counts
+		return circleList;
+	}
+
+	// checks if (u,v) is a local maximum of the center accumulator (ties are
+	// resolved in favor of the first position in raster order)
+	private boolean isLocalMax(int u, int v) {
+		final int c = centerArray[u + v * width];
+		for (int j = Math.max(0, v - 1); j <= Math.min(height - 1, v + 1); j++) {
+			for (int i = Math.max(0, u - 1); i <= Math.min(width - 1, u + 1); i++) {
+				int d = centerArray[i + j * width];
+				boolean before = (j < v) || (j == v && i < u);
+				if (d > c || (before && d == c))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Builds the radius histogram of all edge pixels around the center (uc, vc)
+	 * whose gradient is consistent with the radial direction, and returns the
+	 * circle with the most supporting pixels (or null if the coverage is too low).
+	 */
+	private HoughCircle makeCircle(int uc, int vc, int votes, int[] hist) {
+		final int rMin = params.rMin;
+		final int rMax = params.rMax;
+		final double cosTol = Math.cos(params.angleTol);
+		Arrays.fill(hist, 0);
+		// refine the center by the centroid of the votes in its 3x3 neighborhood:
+		double su = 0, sv = 0, sw = 0;
+		for (int j = Math.max(0, vc - 1); j <= Math.min(height - 1, vc + 1); j++) {
+			for (int i = Math.max(0, uc - 1); i <= Math.min(width - 1, uc + 1); i++) {
+				double w = centerArray[i + j * width];
+				su += w * i; sv += w * j; sw += w;
+			}
+		}
+		final double xc = su / sw;
+		final double yc = sv / sw;
+		for (int v = Math.max(0, vc - rMax - 1); v <= Math.min(height - 1, vc + rMax + 1); v++) {
+			for (int i = rowStart[v]; i < rowStart[v + 1]; i++) {
+				double dx = us[i] - xc;
+				double dy = vs[i] - yc;
+				double d = Math.sqrt(dx * dx + dy * dy);
+				int r = (int) Math.rint(d);
+				if (r < rMin || r > rMax)
+					continue;
+				if (Math.abs(dx * cs[i] + dy * sn[i]) >= cosTol * d) {
+					hist[r]++;
+				}
+			}
+		}
+		// find the radius with the max. number of pixels in [r-1, r+1]:
+		int rBest = -1;
+		int cBest = 0;
+		for (int r = rMin; r <= rMax; r++) {
+			int c = hist[r - 1] + hist[r] + hist[r + 1];
+			if (c > cBest) {
+				cBest = c;
+				rBest = r;
+			}
+		}
+		if (rBest < 0 || cBest < params.minCoverage * 2 * Math.PI * rBest)
+			return null;
+		// refine the radius by the mean of the 3 histogram bins:
+		double radius = (double) ((rBest - 1) * hist[rBest - 1] + rBest * hist[rBest] +
+				(rBest + 1) * hist[rBest + 1]) / cBest;
+		return new HoughCircle(xc, yc, radius, cBest, votes);
+	}
+
+	/*
+	 * This class represents a circle with center (xc, yc) and radius r.
+	 */
+	public class HoughCircle implements Comparable<HoughCircle> {
+
+		double xc, yc;
+		double radius;
+		int count;
+		int votes;
+
+		// no public constructor
+		HoughCircle(double xc, double yc, double radius, int count, int votes) {
+			this.xc = xc;
+			this.yc = yc;
+			this.radius = radius;
+			this.count = count;
+			this.votes = votes;
+		}
+
+		public double getXc() {
+			return xc;
+		}
+
+		public double getYc() {
+			return yc;
+		}
+
+		public double getRadius() {
+			return radius;
+		}
+
+		/**
+		 * Returns the number of edge pixels on this circle.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the number of votes for the center of this circle.
+		 */
+		public int getVotes() {
+			return votes;
+		}
+
+		/**
+		 * Returns the distance between this circle and the point (x, y).
+		 * The result is positive outside and negative inside the circle.
+		 */
+		public double getDistance(double x, double y) {
+			final double dx = x - xc;
+			final double dy = y - yc;
+			return Math.sqrt(dx * dx + dy * dy) - radius;
+		}
+
+		public int compareTo(HoughCircle hc) {
+			if (this.count > hc.count)
+				return -1;
+			else if (this.count < hc.count)
+				return 1;
+			else
+				return 0;
+		}
+
+		public String toString() {
+			return String.format("%s <xc=%.2f, yc=%.2f, radius=%.2f, count=%d>",
+					HoughCircle.class.getSimpleName(), xc, yc, radius, count);
+		}
+
+	} // end of class HoughCircle
+
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.hough;
+
+/**
+ * This class represents the 2D accumulator of a Hough transform, indexed by
+ * (ai, ri), with angle index ai = 0,...,nAng-1 and radius index ri = 0,...,nRad-1.
+ * Two implementations are available: a dense one (a contiguous int-array) and
+ * a sparse one that only stores nonzero cells, which is suitable for high
+ * parameter resolutions and sparse edge images. Use {@link #create(int, int, long)}
+ * to pick the one that requires less memory.
+ * Different angle rows may be incremented concurrently by different threads,
+ * but each row must only be modified by a single thread at a time.
+ */
+abstract class HoughAccumulator {
+
+	// The sparse accumulator is used if the estimated fraction of nonzero cells is below
+	// this value. A sparse row needs 8 bytes per entry at a load factor of 0.25...0.5, 
+	// i.e., up to 32 bytes per nonzero cell, compared to 4 bytes per cell in the dense case.
+	static final double SPARSE_FILL_RATIO = 0.1;
+
+	final int nAng;
+	final int nRad;
+
+	HoughAccumulator(int nAng, int nRad) {
+		this.nAng = nAng;
+		this.nRad = nRad;
+	}
+
+	/**
+	 * Creates a new accumulator. Since every vote increments at most one cell,
+	 * the number of votes is an upper bound for the number of nonzero cells.
+	 * @param nAng number of angle steps
+	 * @param nRad number of radius steps
+	 * @param nVotes the (estimated) number of votes to be added
+	 */
+	static HoughAccumulator create(int nAng, int nRad, long nVotes) {
+		long nCells = (long) nAng * nRad;
+		if (nVotes < SPARSE_FILL_RATIO * nCells)
+			return new Sparse(nAng, nRad);
+		else
+			return new Dense(nAng, nRad);
+	}
+
+	abstract int get(int ai, int ri);
+
+	abstract void increment(int ai, int ri);
+
+	abstract void decrement(int ai, int ri);
+
+	/**
+	 * Returns the radius indices of all nonzero cells in angle row ai
+	 * (in no particular order).
+	 */
+	abstract int[] getNonzeroRadii(int ai);
+
+	// -------------------------------------------------------------------
+
+	/*
+	 * Dense accumulator, cell (ai,ri) is stored at index ai * nRad + ri.
+	 */
+	static class Dense extends HoughAccumulator {
+		final int[] data;
+
+		Dense(int nAng, int nRad) {
+			super(nAng, nRad);
+			data = new int[nAng * nRad];	// cells initialized to zero!
+		}
+
+		int get(int ai, int ri) {
+			return data[ai * nRad + ri];
+		}
+
+		void increment(int ai, int ri) {
+			data[ai * nRad + ri]++;
+		}
+
+		void decrement(int ai, int ri) {
+			data[ai * nRad + ri]--;
+		}
+
+		int[] getNonzeroRadii(int ai) {
+			final int offset = ai * nRad;
+			int n = 0;
+			for (int ri = 0; ri < nRad; ri++) {
+				if (data[offset + ri] != 0) n++;
+			}
+			int[] radii = new int[n];
+			int i = 0;
+			for (int ri = 0; ri < nRad; ri++) {
+				if (data[offset + ri] != 0) radii[i++] = ri;
+			}
+			return radii;
+		}
+	}
+
+	/*
+	 * Sparse accumulator, each angle row is a hash map (with open addressing
+	 * and linear probing) from radius index to count. Rows are created lazily.
+	 */
+	static class Sparse extends HoughAccumulator {
+		final Row[] rows;
+
+		Sparse(int nAng, int nRad) {
+			super(nAng, nRad);
+			rows = new Row[nAng];
+		}
+
+		int get(int ai, int ri) {
+			Row row = rows[ai];
+			return (row == null) ? 0 : row.get(ri);
+		}
+
+		void increment(int ai, int ri) {
+			Row row = rows[ai];
+			if (row == null) {
+				row = new Row();
+				rows[ai] = row;
+			}
+			row.increment(ri);
+		}
+
+		void decrement(int ai, int ri) {
+			Row row = rows[ai];
+			if (row != null) {
+				row.decrement(ri);
+			}
+		}
+
+		int[] getNonzeroRadii(int ai) {
+			Row row = rows[ai];
+			if (row == null)
+				return new int[0];
+			int n = 0;
+			for (int k = 0; k < row.keys.length; k++) {
+				if (row.keys[k] != 0 && row.counts[k] != 0) n++;
+			}
+			int[] radii = new int[n];
+			int i = 0;
+			for (int k = 0; k < row.keys.length; k++) {
+				if (row.keys[k] != 0 && row.counts[k] != 0) radii[i++] = row.keys[k] - 1;
+			}
+			return radii;
+		}
+
+		static class Row {
+			int[] keys = new int[16];		// ri + 1 (0 = empty slot)
+			int[] counts = new int[16];
+			int size = 0;
+
+			int get(int ri) {
+				final int key = ri + 1;
+				final int mask = keys.length - 1;
+				for (int k = hash(key) & mask; keys[k] != 0; k = (k + 1) & mask) {
+					if (keys[k] == key) return counts[k];
+				}
+				return 0;
+			}
+
+			void increment(int ri) {
+				final int key = ri + 1;
+				final int mask = keys.length - 1;
+				int k = hash(key) & mask;
+				while (keys[k] != 0) {
+					if (keys[k] == key) {
+						counts[k]++;
+						return;
+					}
+					k = (k + 1) & mask;
+				}
+				keys[k] = key;
+				counts[k] = 1;
+				size++;
+				if (2 * size > keys.length) {	// keep load factor <= 0.5
+					grow();
+				}
+			}
+
+			// entries are never removed (their count may become zero)
+			void decrement(int ri) {
+				final int key = ri + 1;
+				final int mask = keys.length - 1;
+				for (int k = hash(key) & mask; keys[k] != 0; k = (k + 1) & mask) {
+					if (keys[k] == key) {
+						counts[k]--;
+						return;
+					}
+				}
+			}
+
+			private void grow() {
+				int[] oldKeys = keys;
+				int[] oldCounts = counts;
+				keys = new int[2 * oldKeys.length];
+				counts = new int[2 * oldKeys.length];
+				final int mask = keys.length - 1;
+				for (int j = 0; j < oldKeys.length; j++) {
+					if (oldKeys[j] != 0) {
+						int k = hash(oldKeys[j]) & mask;
+						while (keys[k] != 0) {
+							k = (k + 1) & mask;
+						}
+						keys[k] = oldKeys[j];
+						counts[k] = oldCounts[j];
+					}
+				}
+			}
+
+			private static int hash(int key) {	// scrambles neighboring keys
+				int h = key * 0x9E3779B9;
+				return h ^ (h >>> 16);
+			}
+		}
+	}
+
+}
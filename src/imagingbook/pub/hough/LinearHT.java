@@ -3,9 +3,11 @@ package imagingbook.pub.hough;
 import ij.IJ;
 import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
+import imagingbook.lib.util.Parallel;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class LinearHT {
@@ -17,8 +19,11 @@ public class LinearHT {
 	final int cRad;				// array index for zero radius (r = 0)
 	final double dAng;			// increment of angle
 	final double dRad; 			// increment of radius
-	final int[][] houghArray; 	// Hough accumulator array
-	final int[][] localMaxArray;	// array of accumulator local maxima
+	final double[] cosTable;	// cos(theta) for each angle index
+	final double[] sinTable;	// sin(theta) for each angle index
+	final FloatProcessor orientation;	// local edge orientation (null = every pixel votes for all angles)
+	final int nWin;				// max. angular deviation from the edge normal (in angle steps)
+	final HoughAccumulator houghArray; 	// Hough accumulator array (dense or sparse)
 	
 	public double getXc() {
 		return xc;
@@ -31,6 +36,27 @@ public class LinearHT {
 	// --------------  public constructor(s) ------------------------
 	
 	public LinearHT(ByteProcessor ip, int nAng, int nRad) {
+		this(ip, nAng, nRad, null, 0);
+	}
+	
+	/**
+	 * Creates a Hough transform with gradient-directed voting. Each foreground
+	 * pixel (u,v) only votes for line angles within +/- angleTol of its local
+	 * edge normal, given by the value of the orientation image at (u,v) in radians
+	 * (e.g., as obtained from CannyEdgeDetector.getEdgeOrientation()). The sign of 
+	 * the orientation is irrelevant, i.e., directions are taken modulo PI.
+	 * @param ip binary edge image (foreground pixels > 0)
+	 * @param nAng number of angular steps
+	 * @param nRad number of radial steps
+	 * @param orientation edge orientation image (same size as ip)
+	 * @param angleTol max. deviation from the edge normal (in radians)
+	 */
+	public LinearHT(ByteProcessor ip, int nAng, int nRad, FloatProcessor orientation, double angleTol) {
+		this(ip, nAng, nRad, orientation, angleTol, true);
+	}
+	
+	// used by sub-classes which fill the accumulator themselves (fill = false)
+	LinearHT(ByteProcessor ip, int nAng, int nRad, FloatProcessor orientation, double angleTol, boolean fill) {
 		this.ip = ip;
 		this.nAng = nAng; 
 		this.dAng = Math.PI / nAng;
@@ -40,44 +66,77 @@ public class LinearHT {
 		this.yc = ip.getHeight() / 2;
 		this.rMax = Math.sqrt(xc * xc + yc * yc);
 		this.dRad = (2 * rMax) / nRad;
-		this.houghArray = makeHoughArray(); 
-		fillHoughArray();
-		this.localMaxArray = findLocalMaxima();
+		this.orientation = orientation;
+		this.nWin = (orientation == null) ? nAng : (int) Math.round(angleTol / dAng);
+		if (orientation != null && 
+				(orientation.getWidth() != ip.getWidth() || orientation.getHeight() != ip.getHeight()))
+			throw new IllegalArgumentException("orientation image must be of same size as edge image");
+		this.cosTable = new double[nAng];
+		this.sinTable = new double[nAng];
+		for (int ai = 0; ai < nAng; ai++) {
+			double theta = dAng * ai;
+			cosTable[ai] = Math.cos(theta);
+			sinTable[ai] = Math.sin(theta);
+		}
+		int n = countForegroundPixels();
+		// each foreground pixel votes for (at most) 2 * nWin + 1 angles:
+		long nVotes = (long) n * Math.min(2 * nWin + 1, nAng);
+		this.houghArray = HoughAccumulator.create(nAng, nRad, nVotes); 
+		if (fill) {
+			fillHoughArray(n);
+		}
 	}
 	
 	// --------------  public methods ------------------------
 	
 	/**
 	 * Find and return the parameters of the n strongest lines (with max. pixel counts).
-	 * Could be implemented more efficiently with insert-sort.
+	 * Local maxima of the accumulator are detected on the fly and the strongest
+	 * candidates are kept in a bounded min-heap, i.e., no additional accumulator-sized
+	 * array is created. Lines with the same count are returned in the order of
+	 * their radius index (and angle index).
 	 */
-	public List<HoughLine> getMaxLines(int maxCnt, int minPts) {
-		HoughLine[] linArr = new HoughLine[maxCnt];
-		// create an array of n blank HoughLine objects (with count = -1)
-		for (int i = 0; i < linArr.length; i++) {
-			linArr[i] = new HoughLine(0, 0, -1);
+	public List<HoughLine> getMaxLines(final int maxCnt, final int minPts) {
+		List<HoughLine> lineList = new ArrayList<HoughLine>();
+		if (maxCnt <= 0) {
+			return lineList;
 		}
-
-		for (int ri = 0; ri < nRad; ri++) {
-			for (int ai = 0; ai < nAng; ai++) {
-				int hcount = localMaxArray[ai][ri];
-				if (hcount >= minPts) {
-					HoughLine last = linArr[linArr.length - 1];
-					if (hcount > last.count) {
-						last.angle = realAngle(ai);
-						last.radius = realRadius(ri);
-						last.count = hcount;
-						Arrays.sort(linArr);	// this may be more efficient with insert sort
+		// collect the strongest local maxima for each band of angles in parallel:
+		final int nb = Parallel.getBandCount(nAng, Parallel.getThreadCount());
+		final PeakHeap[] bandHeaps = new PeakHeap[nb];
+		Parallel.forBands(nAng, nb, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				PeakHeap heap = new PeakHeap(maxCnt);
+				for (int ai = from; ai < to; ai++) {
+					for (int ri : houghArray.getNonzeroRadii(ai)) {
+						if (ri == 0 || ri == nRad - 1) continue;
+						int hcount = houghArray.get(ai, ri);
+						if (hcount >= minPts && heap.accepts(hcount, ri * nAng + ai) && isLocalMax(ai, ri)) {
+							heap.add(hcount, ri * nAng + ai);
+						}
 					}
 				}
+				bandHeaps[band] = heap;
+			}
+		});
+		// merge the results of all bands:
+		PeakHeap heap = new PeakHeap(maxCnt);
+		for (PeakHeap bh : bandHeaps) {
+			for (int i = 0; i < bh.size; i++) {
+				if (heap.accepts(bh.counts[i], bh.ranks[i])) {
+					heap.add(bh.counts[i], bh.ranks[i]);
+				}
 			}
 		}
-		// linArr is sorted by count (highest counts first)
-		List<HoughLine> lineList = new ArrayList<HoughLine>();
-		for (HoughLine hl : linArr) {
-			if (hl.getCount() < minPts) break;
-			lineList.add(hl);
+		// extract lines from the heap (weakest first) and reverse:
+		while (heap.size > 0) {
+			int rank = heap.ranks[0];
+			int ri = rank / nAng;
+			int ai = rank % nAng;
+			lineList.add(new HoughLine(realAngle(ai), realRadius(ri), heap.counts[0]));
+			heap.removeMin();
 		}
+		Collections.reverse(lineList);
 		return lineList;
 	}
 	
@@ -90,7 +149,7 @@ public class LinearHT {
 		FloatProcessor fp = new FloatProcessor(nAng,nRad);
 		for (int ri = 0; ri < nRad; ri++) {
 			for (int ai = 0; ai < nAng; ai++) {
-				fp.setf(ai, ri, houghArray[ai][ri]);
+				fp.setf(ai, ri, houghArray.get(ai, ri));
 			}
 		}
 		fp.resetMinAndMax();
@@ -98,10 +157,11 @@ public class LinearHT {
 	}
 	
 	public FloatProcessor getLocalMaxImage() {
+		int[] localMaxArray = findLocalMaxima();	// created on demand
 		FloatProcessor fp = new FloatProcessor(nAng,nRad);
 		for (int ri = 0; ri < nRad; ri++) {
 			for (int ai = 0; ai < nAng; ai++) {
-				fp.setf(ai, ri, localMaxArray[ai][ri]);
+				fp.setf(ai, ri, localMaxArray[ai * nRad + ri]);
 			}
 		}
 		fp.resetMinAndMax();
@@ -110,77 +170,216 @@ public class LinearHT {
 	
 	// --------------  nonpublic methods ------------------------
 	
-	private void fillHoughArray() {
+	/*
+	 * The foreground pixels are collected first. Then the range of angles is 
+	 * split into bands which are processed in parallel, each band running over 
+	 * all foreground pixels. Since every band only updates its own rows of the
+	 * accumulator, no synchronization or merging of partial results is needed.
+	 */
+	private void fillHoughArray(int n) {	// n = number of foreground pixels
 		IJ.showStatus("filling accumulator ...");
 		int h = ip.getHeight();
 		int w = ip.getWidth();
-		for (int v = 0; v < h; v++) {
-			IJ.showProgress(v, h);
-			for (int u = 0; u < w; u++) {
-				if (pixelIsForeground(u, v)) {		// this is a forground pixel
-					doPixel(u, v);
+		final int[] us = new int[n];	// foreground pixel positions
+		final int[] vs = new int[n];
+		if (2 * nWin + 1 >= nAng) {	// every pixel votes for all angles
+			int i = 0;
+			for (int v = 0; v < h; v++) {
+				for (int u = 0; u < w; u++) {
+					if (pixelIsForeground(u, v)) {		// this is a forground pixel
+						us[i] = u;
+						vs[i] = v;
+						i++;
+					}
 				}
 			}
+			Parallel.forBands(nAng, new Parallel.BandTask() {
+				public void run(int band, int from, int to) {
+					for (int ai = from; ai < to; ai++) {
+						doAngle(ai, us, vs, 0, us.length);
+					}
+				}
+			});
+		}
+		else {	// gradient-directed voting
+			// pixels are sorted by the angle index of their edge normal,
+			// pixels with normal angle index a are at positions start[a],...,start[a+1]-1
+			final int[] start = new int[nAng + 1];
+			for (int v = 0; v < h; v++) {
+				for (int u = 0; u < w; u++) {
+					if (pixelIsForeground(u, v)) {
+						start[getNormalAngleIndex(u, v) + 1]++;
+					}
+				}
+			}
+			for (int a = 0; a < nAng; a++) {
+				start[a + 1] += start[a];
+			}
+			int[] next = Arrays.copyOf(start, nAng);
+			for (int v = 0; v < h; v++) {
+				for (int u = 0; u < w; u++) {
+					if (pixelIsForeground(u, v)) {
+						int i = next[getNormalAngleIndex(u, v)]++;
+						us[i] = u;
+						vs[i] = v;
+					}
+				}
+			}
+			// angle ai receives votes from pixels with normal angle index ai-nWin,...,ai+nWin
+			Parallel.forBands(nAng, new Parallel.BandTask() {
+				public void run(int band, int from, int to) {
+					for (int ai = from; ai < to; ai++) {
+						for (int d = -nWin; d <= nWin; d++) {
+							int a = (ai + d + nAng) % nAng;
+							doAngle(ai, us, vs, start[a], start[a + 1]);
+						}
+					}
+				}
+			});
 		}
-		IJ.showProgress(1, 1);
 	}
 	
-	private int[][] makeHoughArray() {
-		int[][] houghArray = new int[nAng][nRad]; // cells initialized to zero!
-		return houghArray;
+	// returns the angle index of the edge normal at position (u,v)
+	private int getNormalAngleIndex(int u, int v) {
+		double theta = orientation.getf(u, v) % Math.PI;	// theta in (-PI, PI)
+		if (theta < 0) 
+			theta = theta + Math.PI;
+		return (int) Math.rint(theta / dAng) % nAng;
+	}
+	
+	int countForegroundPixels() {
+		int h = ip.getHeight();
+		int w = ip.getWidth();
+		int n = 0;
+		for (int v = 0; v < h; v++) {
+			for (int u = 0; u < w; u++) {
+				if (pixelIsForeground(u, v)) n++;
+			}
+		}
+		return n;
 	}
 
-
-	private void doPixel(int u, int v) {
-		final double x = u - xc;
-		final double y = v - yc;
-		for (int ai = 0; ai < nAng; ai++) {
-			double theta = dAng * ai;
-			double r = x * Math.cos(theta) + y * Math.sin(theta);
+	// adds the votes of foreground pixels (us[i], vs[i]), i = from,...,to-1, for angle index ai
+	private void doAngle(int ai, int[] us, int[] vs, int from, int to) {
+		final double cosTheta = cosTable[ai];
+		final double sinTheta = sinTable[ai];
+		for (int i = from; i < to; i++) {
+			final double x = us[i] - xc;
+			final double y = vs[i] - yc;
+			double r = x * cosTheta + y * sinTheta;
 			int ri =  cRad + (int) Math.rint(r / dRad);
 			if (ri >= 0 && ri < nRad) {
-				houghArray[ai][ri]++;
+				houghArray.increment(ai, ri);
 			}
 		}
 	}
 	
-	private int[][] findLocalMaxima() {
+	private int[] findLocalMaxima() {
 		IJ.showStatus("finding local maxima");
-		int[][] lmA = new int[nAng][nRad]; //initialized to zero
+		int[] lmA = new int[nAng * nRad]; //initialized to zero
 		for (int ai = 0; ai < nAng; ai++) {
-			// angle dimension is treated cyclically:
-			int a1 = (ai > 0) ? ai-1 : nAng-1;
-			int a2 = (ai < nAng-1) ? ai+1 : 0;
 			for (int ri = 1; ri < nRad - 1; ri++) {
-				int ha = houghArray[ai][ri];
-				// this test is critical if 2 identical cell values 
-				// appear next to each other!
-				boolean ismax =
-					ha > houghArray[a1][ri-1] &&
-					ha > houghArray[a1][ri]   &&
-					ha > houghArray[a1][ri+1] &&
-					ha > houghArray[ai][ri-1] &&
-					ha > houghArray[ai][ri+1] &&
-					ha > houghArray[a2][ri-1] &&
-					ha > houghArray[a2][ri]   &&
-					ha > houghArray[a2][ri+1] ;
-				if (ismax)
-					lmA[ai][ri] = ha;
+				if (isLocalMax(ai, ri))
+					lmA[ai * nRad + ri] = houghArray.get(ai, ri);
 			}
 		}
 		return lmA;
 	}
 	
+	// checks if accumulator cell (ai,ri) is a strict local maximum (0 < ri < nRad-1)
+	private boolean isLocalMax(int ai, int ri) {
+		// angle dimension is treated cyclically:
+		int a1 = (ai > 0) ? ai-1 : nAng-1;
+		int a2 = (ai < nAng-1) ? ai+1 : 0;
+		final HoughAccumulator H = houghArray;
+		int ha = H.get(ai, ri);
+		// this test is critical if 2 identical cell values 
+		// appear next to each other!
+		return
+			ha > H.get(a1, ri - 1) &&
+			ha > H.get(a1, ri)     &&
+			ha > H.get(a1, ri + 1) &&
+			ha > H.get(ai, ri - 1) &&
+			ha > H.get(ai, ri + 1) &&
+			ha > H.get(a2, ri - 1) &&
+			ha > H.get(a2, ri)     &&
+			ha > H.get(a2, ri + 1) ;
+	}
+	
 	//returns real angle for angle index ai
-	private double realAngle(int ai) {	
+	double realAngle(int ai) {	
 		return ai * dAng;
 	}
 	
 	//returns real radius for radius index ri (with respect to image center <uc, vc>)
-	private double realRadius(int ri) {	
+	double realRadius(int ri) {	
 		return (ri - cRad) * dRad;
 	}
 	
+	/*
+	 * Bounded min-heap of accumulator peaks (count, rank), with rank = ri * nAng + ai.
+	 * Peaks are ordered by count and, for equal counts, by rank (a larger rank
+	 * is considered weaker), so the root is always the weakest peak.
+	 */
+	static class PeakHeap {
+		final int[] counts;
+		final int[] ranks;
+		int size = 0;
+		
+		PeakHeap(int capacity) {
+			counts = new int[capacity];
+			ranks = new int[capacity];
+		}
+		
+		// returns true if a peak (count, rank) would be inserted
+		boolean accepts(int count, int rank) {
+			return size < counts.length || isWeaker(counts[0], ranks[0], count, rank);
+		}
+		
+		// inserts a new peak, replacing the weakest peak if the heap is full
+		void add(int count, int rank) {
+			if (size < counts.length) {
+				int i = size++;
+				while (i > 0) {	// sift up
+					int p = (i - 1) / 2;
+					if (!isWeaker(count, rank, counts[p], ranks[p])) break;
+					counts[i] = counts[p]; ranks[i] = ranks[p];
+					i = p;
+				}
+				counts[i] = count; ranks[i] = rank;
+			}
+			else {
+				siftDown(count, rank);
+			}
+		}
+		
+		void removeMin() {
+			size--;
+			if (size > 0) {
+				siftDown(counts[size], ranks[size]);
+			}
+		}
+		
+		// places (count, rank) at the root and restores the heap order
+		private void siftDown(int count, int rank) {
+			int i = 0;
+			while (true) {
+				int c = 2 * i + 1;
+				if (c >= size) break;
+				if (c + 1 < size && isWeaker(counts[c + 1], ranks[c + 1], counts[c], ranks[c])) c++;
+				if (!isWeaker(counts[c], ranks[c], count, rank)) break;
+				counts[i] = counts[c]; ranks[i] = ranks[c];
+				i = c;
+			}
+			counts[i] = count; ranks[i] = rank;
+		}
+		
+		// returns true if peak 1 is weaker than peak 2
+		static boolean isWeaker(int count1, int rank1, int count2, int rank2) {
+			return count1 < count2 || (count1 == count2 && rank1 > rank2);
+		}
+	}
+	
 	/*
 	 * This class represents a straight line in Hessian normal form.
 	 */
@@ -191,7 +390,7 @@ public class LinearHT {
 		int count;
 
 		// no public constructor
-		private HoughLine(double angle, double radius, int count){
+		HoughLine(double angle, double radius, int count){
 			this.angle  = angle;	
 			this.radius = radius;	
 			this.count  = count;	
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.hough;
+
+import ij.IJ;
+import ij.process.ByteProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Progressive probabilistic Hough transform for straight lines (Matas et al.).
+ * Foreground pixels are processed in random order, each pixel voting for all
+ * angles. As soon as a single accumulator cell exceeds the significance threshold
+ * ({@link Parameters#minVotes}), the pixels supporting this line are collected,
+ * their votes are removed from the accumulator and they are excluded from
+ * further processing. Thus typically only a small fraction of the foreground
+ * pixels ever votes. Lines are returned as {@link LinearHT.HoughLine} objects,
+ * with angle and radius refined by a least-squares fit to the supporting pixels.
+ */
+public class ProbabilisticLinearHT extends LinearHT {
+
+	public static class Parameters {
+		/** Number of votes required for a line to be considered significant */
+		public int minVotes = 20;
+		/** Max. distance of supporting pixels from the line (in pixels) */
+		public double lineTol = 1.5;
+		/** Min. number of supporting pixels for a line to be returned */
+		public int minPoints = 30;
+		/** Max. number of lines to be detected (0 = no limit) */
+		public int maxLines = 0;
+		/** Seed of the random generator (for reproducible results) */
+		public long seed = 0;
+	}
+
+	// pixel states:
+	static final byte NONE = 0;		// background or already assigned to a line
+	static final byte POOL = 1;		// foreground pixel not yet processed
+	static final byte VOTED = 2;	// foreground pixel which has voted
+
+	private final Parameters params;
+	private final int width;
+	private final int height;
+	private final byte[] state;		// pixel state, index u + v * width
+	private final List<HoughLine> lines = new ArrayList<HoughLine>();
+
+	// --------------  public constructor(s) ------------------------
+
+	public ProbabilisticLinearHT(ByteProcessor ip, int nAng, int nRad) {
+		this(ip, nAng, nRad, new Parameters());
+	}
+
+	public ProbabilisticLinearHT(ByteProcessor ip, int nAng, int nRad, Parameters params) {
+		super(ip, nAng, nRad, null, 0, false);
+		this.params = params;
+		this.width = ip.getWidth();
+		this.height = ip.getHeight();
+		this.state = new byte[width * height];
+		findLines();
+	}
+
+	// --------------  public methods ------------------------
+
+	/**
+	 * Returns all detected lines, in the order of their detection.
+	 */
+	public List<HoughLine> getLines() {
+		return Collections.unmodifiableList(lines);
+	}
+
+	/**
+	 * Returns (at most) maxCnt of the detected lines with at least minPts
+	 * supporting pixels, sorted by decreasing pixel count.
+	 */
+	@Override
+	public List<HoughLine> getMaxLines(int maxCnt, int minPts) {
+		List<HoughLine> lineList = new ArrayList<HoughLine>();
+		for (HoughLine hl : lines) {
+			if (hl.getCount() >= minPts) {
+				lineList.add(hl);
+			}
+		}
+		Collections.sort(lineList);		// stable, i.e., order of detection is kept for equal counts
+		if (lineList.size() > maxCnt) {
+			lineList = new ArrayList<HoughLine>(lineList.subList(0, Math.max(0, maxCnt)));
+		}
+		return lineList;
+	}
+
+	// --------------  nonpublic methods ------------------------
+
+	private void findLines() {
+		IJ.showStatus("finding lines ...");
+		// collect the foreground pixels and shuffle them (Fisher-Yates):
+		int n = countForegroundPixels();
+		int[] pixels = new int[n];
+		int i = 0;
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				if (pixelIsForeground(u, v)) {
+					pixels[i++] = u + v * width;
+					state[u + v * width] = POOL;
+				}
+			}
+		}
+		Random rnd = new Random(params.seed);
+		for (int k = n - 1; k > 0; k--) {
+			int j = rnd.nextInt(k + 1);
+			int tmp = pixels[k]; pixels[k] = pixels[j]; pixels[j] = tmp;
+		}
+
+		for (int k = 0; k < n; k++) {
+			if (params.maxLines > 0 && lines.size() >= params.maxLines)
+				break;
+			int p = pixels[k];
+			if (state[p] != POOL) 	// pixel was already assigned to some line
+				continue;
+			int amax = vote(p % width, p / width);
+			state[p] = VOTED;
+			if (amax < 0)
+				continue;
+			// the cell (amax, rmax) has become significant:
+			double x = p % width - xc;
+			double y = p / width - yc;
+			double theta = realAngle(amax);
+			double r = x * cosTable[amax] + y * sinTable[amax];
+			int[] support = collectSupport(theta, r);
+			double[] fit = fitLine(support);
+			if (fit != null) {
+				support = collectSupport(fit[0], fit[1]);
+			}
+			// remove the supporting pixels (and their votes):
+			for (int q : support) {
+				if (state[q] == VOTED) {
+					unvote(q % width, q / width);
+				}
+				state[q] = NONE;
+			}
+			if (fit != null && support.length >= params.minPoints) {
+				lines.add(new HoughLine(fit[0], fit[1], support.length));
+			}
+		}
+	}
+
+	// adds the votes of pixel (u,v), returns the angle index of a cell which
+	// reached the significance threshold or -1 if there is none
+	private int vote(int u, int v) {
+		final double x = u - xc;
+		final double y = v - yc;
+		int amax = -1;
+		int hmax = params.minVotes - 1;
+		for (int ai = 0; ai < nAng; ai++) {
+			double r = x * cosTable[ai] + y * sinTable[ai];
+			int ri = cRad + (int) Math.rint(r / dRad);
+			if (ri >= 0 && ri < nRad) {
+				houghArray.increment(ai, ri);
+				int h = houghArray.get(ai, ri);
+				if (h > hmax) {
+					hmax = h;
+					amax = ai;
+				}
+			}
+		}
+		return amax;
+	}
+
+	// removes the votes of pixel (u,v)
+	private void unvote(int u, int v) {
+		final double x = u - xc;
+		final double y = v - yc;
+		for (int ai = 0; ai < nAng; ai++) {
+			double r = x * cosTable[ai] + y * sinTable[ai];
+			int ri = cRad + (int) Math.rint(r / dRad);
+			if (ri >= 0 && ri < nRad) {
+				houghArray.decrement(ai, ri);
+			}
+		}
+	}
+
+	/*
+	 * Collects all unassigned foreground pixels within distance lineTol of the
+	 * line x * cos(theta) + y * sin(theta) = r (relative to the image center).
+	 * Only a narrow corridor along the line is visited, stepping along the
+	 * coordinate axis which is closer to the line direction.
+	 */
+	private int[] collectSupport(double theta, double r) {
+		final double cs = Math.cos(theta);
+		final double sn = Math.sin(theta);
+		final double tol = params.lineTol;
+		int[] support = new int[64];
+		int cnt = 0;
+		if (Math.abs(sn) >= Math.abs(cs)) {	// line is mostly horizontal, step along u
+			final double dy = tol / Math.abs(sn);
+			for (int u = 0; u < width; u++) {
+				double y0 = (r - (u - xc) * cs) / sn + yc;
+				int v0 = Math.max(0, (int) Math.ceil(y0 - dy));
+				int v1 = Math.min(height - 1, (int) Math.floor(y0 + dy));
+				for (int v = v0; v <= v1; v++) {
+					int q = u + v * width;
+					if (state[q] != NONE) {
+						if (cnt == support.length) support = grow(support);
+						support[cnt++] = q;
+					}
+				}
+			}
+		}
+		else {								// line is mostly vertical, step along v
+			final double dx = tol / Math.abs(cs);
+			for (int v = 0; v < height; v++) {
+				double x0 = (r - (v - yc) * sn) / cs + xc;
+				int u0 = Math.max(0, (int) Math.ceil(x0 - dx));
+				int u1 = Math.min(width - 1, (int) Math.floor(x0 + dx));
+				for (int u = u0; u <= u1; u++) {
+					int q = u + v * width;
+					if (state[q] != NONE) {
+						if (cnt == support.length) support = grow(support);
+						support[cnt++] = q;
+					}
+				}
+			}
+		}
+		int[] result = new int[cnt];
+		System.arraycopy(support, 0, result, 0, cnt);
+		return result;
+	}
+
+	private static int[] grow(int[] a) {
+		int[] b = new int[2 * a.length];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	/*
+	 * Fits a straight line to the given pixels by orthogonal regression.
+	 * Returns the line parameters {theta, r} (with theta in [0, PI) and r
+	 * relative to the image center) or null if there are less than 2 pixels.
+	 */
+	private double[] fitLine(int[] points) {
+		final int n = points.length;
+		if (n < 2)
+			return null;
+		double sx = 0, sy = 0;
+		for (int q : points) {
+			sx += q % width - xc;
+			sy += q / width - yc;
+		}
+		final double mx = sx / n;
+		final double my = sy / n;
+		double sxx = 0, syy = 0, sxy = 0;
+		for (int q : points) {
+			double dx = q % width - xc - mx;
+			double dy = q / width - yc - my;
+			sxx += dx * dx;
+			syy += dy * dy;
+			sxy += dx * dy;
+		}
+		// the line normal is perpendicular to the direction of max. variance:
+		double theta = 0.5 * Math.atan2(2 * sxy, sxx - syy) + 0.5 * Math.PI;
+		double r = mx * Math.cos(theta) + my * Math.sin(theta);
+		if (theta >= Math.PI) {
+			theta = theta - Math.PI;
+			r = -r;
+		}
+		return new double[] {theta, r};
+	}
+
+}
@@ -9,10 +9,53 @@
 
 package imagingbook.pub.matching;
 import ij.process.*;
+import imagingbook.lib.util.Parallel;
+
+import java.util.Arrays;
+import java.util.Comparator;
 
 public class ChamferMatcher {
 	
+	/**
+	 * Chamfer: two-pass approximation with distances 1 and sqrt(2) to the 8 neighbors,
+	 * Euclidean: exact Euclidean distance, SquaredEuclidean: its square.
+	 */
+	public static enum DistanceType {
+		Chamfer, Euclidean, SquaredEuclidean;
+	}
+	
+	/**
+	 * Returns the (chamfer) distance of every pixel to the closest foreground pixel (> 0).
+	 */
 	public static FloatProcessor distanceTransform(ImageProcessor ip){
+		return distanceTransform(ip, DistanceType.Chamfer);
+	}
+	
+	public static FloatProcessor distanceTransform(ImageProcessor ip, DistanceType type){
+		return distanceTransform(ip, type, null);
+	}
+	
+	/**
+	 * Returns the distance of every pixel to the closest foreground pixel (> 0).
+	 * The (squared) Euclidean distance is exact and calculated in O(pixels) by the
+	 * separable algorithm of Felzenszwalb and Huttenlocher ("Distance transforms of
+	 * sampled functions", 2004): the closest foreground pixel is first found in every
+	 * column, then the distances within every row are given by the lower envelope
+	 * of parabolas. Columns and rows are processed in parallel.
+	 * @param nearest if not null (Euclidean distances only), receives the index
+	 * (u + v * width) of the closest foreground pixel, or -1 if there is none
+	 */
+	public static FloatProcessor distanceTransform(ImageProcessor ip, DistanceType type, int[] nearest){
+		if (type == DistanceType.Chamfer) {
+			if (nearest != null)
+				throw new IllegalArgumentException("nearest foreground pixels require the Euclidean distance");
+			return chamferTransform(ip);
+		}
+		else
+			return euclideanTransform(ip, type == DistanceType.SquaredEuclidean, nearest);
+	}
+	
+	static FloatProcessor chamferTransform(ImageProcessor ip){
 		FloatProcessor dp = (FloatProcessor) ip.convertToFloat();
 		int w = dp.getWidth();
 		int h = dp.getHeight();
@@ -92,29 +135,351 @@ public class ChamferMatcher {
 		
 		return dp;
 	}
+	
+	static FloatProcessor euclideanTransform(ImageProcessor ip, final boolean squared, final int[] nearest){
+		FloatProcessor dp = (FloatProcessor) ip.convertToFloat();
+		final int w = dp.getWidth();
+		final int h = dp.getHeight();
+		final float[] dpix = (float[]) dp.getPixels();
+		if (nearest != null && nearest.length < dpix.length)
+			throw new IllegalArgumentException("array of nearest foreground pixels is too small");
+		final int[] Y = new int[w * h];	// row of the closest foreground pixel in the same column (-1 = none)
+		
+		//Column pass (the rows are traversed in order, for a band of columns at a time):
+		Parallel.forBands(w, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int v = 0; v < h; v++) {
+					for (int u = from; u < to; u++) {
+						int i = v * w + u;
+						if (dpix[i] > 0)	// this is a foreground pixel
+							Y[i] = v;
+						else
+							Y[i] = (v > 0) ? Y[i - w] : -1;
+					}
+				}
+				for (int v = h - 2; v >= 0; v--) {
+					for (int u = from; u < to; u++) {
+						int i = v * w + u;
+						int below = Y[i + w];	// closest foreground pixel below (if > v)
+						if (below > v && (Y[i] < 0 || below - v < v - Y[i]))
+							Y[i] = below;
+					}
+				}
+			}
+		});
+		
+		//Row pass (lower envelope of the parabolas (u - q)^2 + g(q)^2):
+		Parallel.forBands(h, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				int[] q = new int[w];			// columns of the parabolas in the envelope
+				double[] z = new double[w + 1];	// boundaries between the parabolas
+				for (int v = from; v < to; v++) {
+					int off = v * w;
+					int k = -1;
+					for (int u = 0; u < w; u++) {
+						if (Y[off + u] < 0) continue;	// no foreground pixel in this column
+						long f = (long) u * u + sqr(v - Y[off + u]);
+						double s = Double.NEGATIVE_INFINITY;
+						while (k >= 0) {
+							int p = q[k];
+							long fp = (long) p * p + sqr(v - Y[off + p]);
+							s = (double) (f - fp) / (2 * (u - p));
+							if (s <= z[k])
+								k--;
+							else
+								break;
+						}
+						if (k < 0)
+							s = Double.NEGATIVE_INFINITY;
+						k++;
+						q[k] = u;
+						z[k] = s;
+					}
+					if (k < 0) {	// no foreground pixel at all
+						for (int u = 0; u < w; u++) {
+							dpix[off + u] = Float.POSITIVE_INFINITY;
+							if (nearest != null) nearest[off + u] = -1;
+						}
+						continue;
+					}
+					z[k + 1] = Double.POSITIVE_INFINITY;
+					for (int u = 0, j = 0; u < w; u++) {
+						while (z[j + 1] < u)
+							j++;
+						int p = q[j];
+						long d2 = sqr(u - p) + sqr(v - Y[off + p]);
+						dpix[off + u] = squared ? (float) d2 : (float) Math.sqrt(d2);
+						if (nearest != null) nearest[off + u] = Y[off + p] * w + p;
+					}
+				}
+			}
+		});
+		
+		//eliminate all infinite values (set to maxim real value)
+		float maxval = getRealMaxValue(dp);
+		if (maxval > Float.NEGATIVE_INFINITY) {
+			for (int i=0; i<dpix.length; i++){
+				if (dpix[i]>maxval)
+					dpix[i] = maxval;
+			}
+		}
+		return dp;
+	}
+	
+	private static long sqr(int x) {
+		return (long) x * x;
+	}
     
+	/**
+	 * Returns the match values (sum of the distances at the template's foreground pixels)
+	 * for all positions of the template subImg inside distImg, stored at the position
+	 * of the template's center (all other values are infinite). Only the foreground pixels
+	 * of the template are visited, the template positions are processed in parallel.
+	 */
 	public static FloatProcessor chamferMatch(FloatProcessor distImg, ByteProcessor subImg){
-		int w1 = distImg.getWidth();
-		int h1 = distImg.getHeight();
+		final int w1 = distImg.getWidth();
+		final int h1 = distImg.getHeight();
 		int w2 = subImg.getWidth();
 		int h2 = subImg.getHeight();
 		FloatProcessor match = new FloatProcessor(w1,h1);
 		match.setValue(Float.POSITIVE_INFINITY);
 		match.fill();
 		
-		int umax = w1 - w2;
-		int vmax = h1 - h2;
-		int uc = w2 / 2;
-		int vc = h2 / 2;
-		
-		for (int u = 0; u <= umax; u++) {
-			for (int v = 0; v <= vmax; v++) {
-				double q = getMatchValue(distImg,subImg,u,v);
-				match.putPixelValue(uc+u,vc+v,q); //insert the result at the center of sumImg
-			}	
-		}	
+		final int umax = w1 - w2;
+		final int vmax = h1 - h2;
+		final int uc = w2 / 2;
+		final int vc = h2 / 2;
+		final float[] distPix = (float[]) distImg.getPixels();
+		final float[] matchPix = (float[]) match.getPixels();
+		final int[] offsets = getForegroundOffsets(subImg, w1);
+		
+		Parallel.forBands(vmax + 1, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int v = from; v < to; v++) {
+					for (int u = 0; u <= umax; u++) {
+						double q = getMatchValue(distPix, u + v * w1, offsets, Double.POSITIVE_INFINITY);
+						matchPix[(vc + v) * w1 + uc + u] = (float) q; //insert the result at the center of sumImg
+					}
+				}
+			}
+		});
 		return match;
 	}
+	
+	/**
+	 * The best (minimum) match value and the position (upper-left corner) of the template.
+	 */
+	public static class Match {
+		public final int u, v;
+		public final double value;
+		
+		Match(int u, int v, double value) {
+			this.u = u;
+			this.v = v;
+			this.value = value;
+		}
+		
+		public String toString() {
+			return String.format("Match(%d, %d, %.3f)", u, v, value);
+		}
+	}
+	
+	public static Match findBestMatch(FloatProcessor distImg, ByteProcessor subImg){
+		return findBestMatch(distImg, subImg, 3);
+	}
+	
+	/**
+	 * Finds the template position with the minimum match value (the same as the
+	 * minimum of {@link #chamferMatch(FloatProcessor, ByteProcessor)}, ties are resolved
+	 * by the smallest v, then u) by a coarse-to-fine search. Level l of the distance
+	 * pyramid holds the minimum of distImg over blocks of size 2^l x 2^l, such that the
+	 * match value at level l is a lower bound for all positions of the block. Blocks
+	 * are refined best-first and skipped (also during the summation) as soon as their
+	 * lower bound exceeds the best match value found so far, i.e., the result is exact.
+	 * The blocks of the coarsest level are distributed over parallel threads.
+	 * @param levels the number of coarse pyramid levels (0 = exhaustive search)
+	 * @return the best match or null if the template is larger than the image
+	 */
+	public static Match findBestMatch(FloatProcessor distImg, ByteProcessor subImg, int levels){
+		int umax = distImg.getWidth() - subImg.getWidth();
+		int vmax = distImg.getHeight() - subImg.getHeight();
+		if (umax < 0 || vmax < 0)
+			return null;
+		MatchSearch ms = new MatchSearch(distImg, subImg, Math.max(levels, 0), umax, vmax);
+		return ms.search();
+	}
+	
+	// linear offsets (for images of width w1) of all foreground pixels of the template, in raster order
+	static int[] getForegroundOffsets(ByteProcessor subImg, int w1) {
+		int w2 = subImg.getWidth();
+		int h2 = subImg.getHeight();
+		byte[] subPix = (byte[]) subImg.getPixels();
+		int n = 0;
+		for (int i = 0; i < subPix.length; i++) {
+			if ((0xFF & subPix[i]) > 0) n++;
+		}
+		int[] offsets = new int[n];
+		n = 0;
+		for (int v2 = 0; v2 < h2; v2++) {
+			for (int u2 = 0; u2 < w2; u2++) {
+				if ((0xFF & subPix[v2 * w2 + u2]) > 0)	//foreground pixel in template!
+					offsets[n++] = v2 * w1 + u2;
+			}
+		}
+		return offsets;
+	}
+	
+	// sum of distPix[p0 + offsets[k]], the summation stops as soon as the sum exceeds bound
+	static double getMatchValue(float[] distPix, int p0, int[] offsets, double bound) {
+		double q = 0.0;
+		for (int k = 0; k < offsets.length; k++) {
+			q = q + distPix[p0 + offsets[k]];
+			if (q > bound)
+				return q;
+		}
+		return q;
+	}
+	
+	/**
+	 * Coarse-to-fine search for the best match, see
+	 * {@link ChamferMatcher#findBestMatch(FloatProcessor, ByteProcessor, int)}.
+	 */
+	private static class MatchSearch {
+		final int w1, h1;
+		final int umax, vmax;
+		final int[] offsets;
+		final float[][] M;	// distance pyramid (all levels have the size of the distance image)
+		
+		// best match found so far:
+		double bestValue = Double.POSITIVE_INFINITY;
+		int bestU = -1, bestV = -1;
+		
+		MatchSearch(FloatProcessor distImg, ByteProcessor subImg, int levels, int umax, int vmax) {
+			this.w1 = distImg.getWidth();
+			this.h1 = distImg.getHeight();
+			this.umax = umax;
+			this.vmax = vmax;
+			this.offsets = getForegroundOffsets(subImg, w1);
+			M = new float[levels + 1][];
+			M[0] = (float[]) distImg.getPixels();
+			for (int l = 1; l <= levels; l++) {
+				M[l] = makeLevel(M[l - 1], 1 << (l - 1));
+			}
+		}
+		
+		// M_l(x,y) = min of M_(l-1) at (x,y), (x+d,y), (x,y+d), (x+d,y+d), with d = 2^(l-1)
+		float[] makeLevel(final float[] prev, final int d) {
+			final float[] next = new float[prev.length];
+			Parallel.forBands(h1, new Parallel.BandTask() {
+				public void run(int band, int from, int to) {
+					for (int y = from; y < to; y++) {
+						int y2 = Math.min(y + d, h1 - 1);
+						for (int x = 0; x < w1; x++) {
+							int x2 = Math.min(x + d, w1 - 1);
+							float m = Math.min(prev[y * w1 + x], prev[y * w1 + x2]);
+							m = Math.min(m, Math.min(prev[y2 * w1 + x], prev[y2 * w1 + x2]));
+							next[y * w1 + x] = m;
+						}
+					}
+				}
+			});
+			return next;
+		}
+		
+		Match search() {
+			final int L = M.length - 1;
+			final int s = 1 << L;
+			final int nu = umax / s + 1;
+			final int nv = vmax / s + 1;
+			// lower bounds of all blocks at the coarsest level, in ascending order:
+			final double[] bounds = new double[nu * nv];
+			Parallel.forBands(nv, new Parallel.BandTask() {
+				public void run(int band, int from, int to) {
+					for (int j = from; j < to; j++) {
+						for (int i = 0; i < nu; i++) {
+							bounds[j * nu + i] = getMatchValue(M[L], j * s * w1 + i * s, offsets, Double.POSITIVE_INFINITY);
+						}
+					}
+				}
+			});
+			final int[] blocks = sortByValue(bounds);
+			// block k of the sorted list is processed by thread k mod nt:
+			final int nt = Parallel.getThreadCount();
+			Parallel.forBands(nt, nt, new Parallel.BandTask() {
+				public void run(int band, int from, int to) {
+					for (int k = band; k < blocks.length; k += nt) {
+						int b = blocks[k];
+						if (bounds[b] > getBestValue())
+							break;
+						refine(L, (b % nu) * s, (b / nu) * s, bounds[b]);
+					}
+				}
+			});
+			return new Match(bestU, bestV, bestValue);
+		}
+		
+		// refines the block with upper-left position (u,v) at level l, whose lower bound is q
+		void refine(int l, int u, int v, double q) {
+			if (l == 0) {
+				update(u, v, q);
+				return;
+			}
+			int d = 1 << (l - 1);
+			int[] cu = new int[4];
+			int[] cv = new int[4];
+			double[] cq = new double[4];
+			int n = 0;
+			for (int b = 0; b < 2; b++) {
+				for (int a = 0; a < 2; a++) {
+					int uu = u + a * d;
+					int vv = v + b * d;
+					if (uu > umax || vv > vmax) continue;
+					double qq = getMatchValue(M[l - 1], vv * w1 + uu, offsets, getBestValue());
+					// insert into the list of sub-blocks, sorted by lower bound:
+					int k = n++;
+					while (k > 0 && cq[k - 1] > qq) {
+						cu[k] = cu[k - 1]; cv[k] = cv[k - 1]; cq[k] = cq[k - 1];
+						k--;
+					}
+					cu[k] = uu; cv[k] = vv; cq[k] = qq;
+				}
+			}
+			for (int k = 0; k < n; k++) {
+				if (cq[k] <= getBestValue())
+					refine(l - 1, cu[k], cv[k], cq[k]);
+			}
+		}
+		
+		synchronized double getBestValue() {
+			return bestValue;
+		}
+		
+		synchronized void update(int u, int v, double q) {
+			if (bestU < 0 || q < bestValue || (q == bestValue && (v < bestV || (v == bestV && u < bestU)))) {
+				bestValue = q;
+				bestU = u;
+				bestV = v;
+			}
+		}
+		
+		// returns the indices of values in ascending order of the values
+		static int[] sortByValue(final double[] values) {
+			Integer[] idx = new Integer[values.length];
+			for (int i = 0; i < idx.length; i++) {
+				idx[i] = i;
+			}
+			Arrays.sort(idx, new Comparator<Integer>() {
+				public int compare(Integer i1, Integer i2) {
+					return Double.compare(values[i1], values[i2]);
+				}
+			});
+			int[] result = new int[idx.length];
+			for (int i = 0; i < idx.length; i++) {
+				result[i] = idx[i];
+			}
+			return result;
+		}
+	}
     
 	static double getMatchValue(FloatProcessor distImg, ByteProcessor subImg, int u0, int v0) {
 		int w1 = distImg.getWidth();
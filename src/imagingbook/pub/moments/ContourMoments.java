@@ -0,0 +1,198 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.moments;
+
+import imagingbook.lib.util.Parallel;
+import imagingbook.pub.regions.BinaryRegion;
+import imagingbook.pub.regions.Contour;
+import imagingbook.pub.regions.RegionContourLabeling;
+
+import java.util.List;
+
+/**
+ * Moments of binary regions, calculated from their (outer and inner) contours
+ * by a discrete version of Green's theorem. Each image row of a region consists
+ * of runs of pixels, and the sum of u^p over a run [l, r] is S_p(r) - S_p(l-1),
+ * with the power sum S_p(k) = 0^p + 1^p + ... + k^p. The end pixels of all runs
+ * lie on the region's contours, which are traversed once, i.e., the cost is
+ * O(perimeter) instead of O(image size). The results are exactly the same as
+ * the pixel sums calculated by {@link Moments} (up to rounding errors).
+ * Regions must be obtained from a {@link RegionContourLabeling}.
+ * Moments are returned as arrays M[p][q], for all p + q <= n.
+ */
+public class ContourMoments {
+
+	// ------- single regions --------------------------
+
+	public static double moment(BinaryRegion r, int p, int q) {
+		return moments(r, p + q)[p][q];
+	}
+
+	public static double centralMoment(BinaryRegion r, int p, int q) {
+		return centralMoments(r, p + q)[p][q];
+	}
+
+	public static double normalCentralMoment(BinaryRegion r, int p, int q) {
+		double m00 = moment(r, 0, 0);
+		double norm = Math.pow(m00, (double)(p + q + 2) / 2);
+		return centralMoment(r, p, q) / norm;
+	}
+
+	/**
+	 * Returns all ordinary moments of the region up to order n.
+	 */
+	public static double[][] moments(BinaryRegion r, int n) {
+		return regionMoments(r, 0, 0, n);
+	}
+
+	/**
+	 * Returns all central moments of the region up to order n.
+	 */
+	public static double[][] centralMoments(BinaryRegion r, int n) {
+		double[][] M = regionMoments(r, 0, 0, 1);
+		double xc = M[1][0] / M[0][0];
+		double yc = M[0][1] / M[0][0];
+		return regionMoments(r, xc, yc, n);
+	}
+
+	// ------- all regions of a labeling --------------------------
+
+	/**
+	 * Calculates the ordinary moments (up to order n) of all regions, in parallel.
+	 * Element k of the result belongs to region k of {@code rcl.getRegions()}.
+	 */
+	public static double[][][] moments(RegionContourLabeling rcl, int n) {
+		return allMoments(rcl.getRegions(), n, false);
+	}
+
+	/**
+	 * Calculates the central moments (up to order n) of all regions, in parallel.
+	 * Element k of the result belongs to region k of {@code rcl.getRegions()}.
+	 */
+	public static double[][][] centralMoments(RegionContourLabeling rcl, int n) {
+		return allMoments(rcl.getRegions(), n, true);
+	}
+
+	private static double[][][] allMoments(final List<BinaryRegion> regions, final int n, final boolean central) {
+		final double[][][] result = new double[regions.size()][][];
+		Parallel.forBands(regions.size(), new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int k = from; k < to; k++) {
+					BinaryRegion r = regions.get(k);
+					result[k] = central ? centralMoments(r, n) : moments(r, n);
+				}
+			}
+		});
+		return result;
+	}
+
+	// ------- nonpublic methods --------------------------
+
+	// moments of region r (up to order n) with respect to the reference point (xc, yc)
+	private static double[][] regionMoments(BinaryRegion r, double xc, double yc, int n) {
+		Contour outer = r.getOuterContour();
+		if (outer == null)
+			throw new IllegalArgumentException("region has no contour (use RegionContourLabeling)");
+		double[][] M = new double[n + 1][n + 1];
+		addContourMoments(outer, xc, yc, n, M);
+		List<Contour> inner = r.getInnerContours();
+		if (inner != null) {
+			for (Contour c : inner) {
+				addContourMoments(c, xc, yc, n, M);	// run ends bordering the hole
+			}
+		}
+		return M;
+	}
+
+	/*
+	 * At every contour point, the background neighbors are the directions
+	 * (dIn + 5) % 8,...,dOut - 1, where dIn is the direction from the previous
+	 * and dOut the direction to the next contour point (the tracer starts its
+	 * search at (dIn + 6) % 8, direction (dIn + 5) % 8 is known to be background).
+	 * If the left neighbor (direction 4) is among them, the point is the left
+	 * end of a run, if the right neighbor (direction 0) is among them, it is the
+	 * right end of a run. Each run end is found exactly once during a complete
+	 * traversal of all (outer and inner) contours.
+	 */
+	static void addContourMoments(Contour c, double xc, double yc, int n, double[][] M) {
+		final int len = c.getLength();
+		if (len == 0) return;
+		int[] xs = new int[len];
+		int[] ys = new int[len];
+		c.getCoordinates(xs, ys);
+		double[] S = new double[n + 1];		// power sums S_0,...,S_n
+		double[] Y = new double[n + 1];		// powers (v - yc)^0,...,(v - yc)^n
+		if (len == 1) {		// isolated pixel
+			addRun(xs[0], xs[0], ys[0], xc, yc, n, S, Y, M);
+			return;
+		}
+		int dIn = direction(xs[len - 1], ys[len - 1], xs[0], ys[0]);
+		for (int i = 0; i < len; i++) {
+			int j = (i + 1 < len) ? i + 1 : 0;
+			int dOut = direction(xs[i], ys[i], xs[j], ys[j]);
+			for (int d = (dIn + 5) % 8; d != dOut; d = (d + 1) % 8) {
+				if (d == 4) {		// left end of a run: -S_p(u - 1)
+					addEnd(xs[i] - 1 - xc, ys[i] - yc, -1, n, S, Y, M);
+				}
+				else if (d == 0) {	// right end of a run: +S_p(u)
+					addEnd(xs[i] - xc, ys[i] - yc, 1, n, S, Y, M);
+				}
+			}
+			dIn = dOut;
+		}
+	}
+
+	private static void addRun(int l, int r, int v, double xc, double yc, int n,
+			double[] S, double[] Y, double[][] M) {
+		addEnd(l - 1 - xc, v - yc, -1, n, S, Y, M);
+		addEnd(r - xc, v - yc, 1, n, S, Y, M);
+	}
+
+	// adds sign * y^q * S_p(x) to M[p][q], for all p + q <= n
+	private static void addEnd(double x, double y, int sign, int n, double[] S, double[] Y, double[][] M) {
+		powerSums(x, n, S);
+		Y[0] = 1;
+		for (int q = 1; q <= n; q++) {
+			Y[q] = Y[q - 1] * y;
+		}
+		for (int p = 0; p <= n; p++) {
+			for (int q = 0; p + q <= n; q++) {
+				M[p][q] += sign * S[p] * Y[q];
+			}
+		}
+	}
+
+	/*
+	 * Calculates the power sums S_p(x) = 0^p + 1^p + ... + x^p for p = 0,...,n,
+	 * using (x + 1)^(p+1) = sum_{j=0..p} binom(p+1, j) * S_j(x). This is a polynomial
+	 * identity, i.e., S_p(x) - S_p(x - 1) = x^p holds for any real x (not only
+	 * for integers x >= 0), which is needed for non-integer reference points.
+	 */
+	static void powerSums(double x, int n, double[] S) {
+		double x1 = x + 1;
+		double x1pow = x1;		// (x + 1)^(p+1)
+		for (int p = 0; p <= n; p++) {
+			double sum = x1pow;
+			double binom = 1;	// binom(p+1, j)
+			for (int j = 0; j < p; j++) {
+				sum -= binom * S[j];
+				binom = binom * (p + 1 - j) / (j + 1);
+			}
+			S[p] = sum / (p + 1);
+			x1pow *= x1;
+		}
+	}
+
+	// returns the chain code direction from (x1, y1) to its 8-neighbor (x2, y2)
+	private static int direction(int x1, int y1, int x2, int y2) {
+		return Contour.getChainCode(x2 - x1, y2 - y1);
+	}
+
+}
@@ -17,9 +17,10 @@ import ij.process.ImageProcessor;
 public class BinMorpher {
 	
 	int[][] se;	//structuring element
+	LineMorpher[] lines = null;	// decomposition of se into line elements (or null)
 
 	public static enum Operation {
-		Dilation, Erosion, Opening, Closing, Outline;
+		Dilation, Erosion, Opening, Closing, Outline, Thinning;
 	}
 	
 	public static String[] getOpNames() {
@@ -71,17 +72,32 @@ public class BinMorpher {
 			case Opening: this.open(ip,se); break;
 			case Closing: this.close(ip,se); break;
 			case Outline:  this.outline(ip); break;
+			case Thinning: this.thin(ip); break;
 			default: throw new Error("BinMorpher: unknown operation " + op);
 		}
 	}
 	
 	// morphology methods 
 	
+	// binary images (pixel values 0 and 255 only) are processed as bit images
+	static boolean isBinary(ImageProcessor ip) {
+		return (ip instanceof ByteProcessor) && ip.isBinary();
+	}
+	
 	void dilate(ImageProcessor ip, int[][] H){
 		if (H == null) {
 			IJ.error("no structuring element");
 			return;
 		}
+		LineMorpher[] L = getLineDecomposition(H, false);
+		if (useLines(ip, H, L)) {
+			LineMorpher.dilate(ip, L);
+			return;
+		}
+		if (isBinary(ip)) {
+			new BitImage((ByteProcessor) ip).dilate(H).copyTo((ByteProcessor) ip);
+			return;
+		}
 
 		//assume that the hot spot of se is at its center (ic,jc)
 		int ic = (H[0].length - 1) / 2;
@@ -106,6 +122,15 @@ public class BinMorpher {
 	}
 	
 	void erode(ImageProcessor ip, int[][] H){
+		LineMorpher[] L = getLineDecomposition(H, true);
+		if (useLines(ip, H, L)) {
+			LineMorpher.erode(ip, L);
+			return;
+		}
+		if (isBinary(ip)) {
+			new BitImage((ByteProcessor) ip).erode(H).copyTo((ByteProcessor) ip);
+			return;
+		}
 		//dilates the background
 		ip.invert();
 		dilate(ip,reflect(H));
@@ -113,16 +138,28 @@ public class BinMorpher {
 	}
 	
 	void open(ImageProcessor ip, int[][] H){
+		if (useBits(ip, H)) {
+			new BitImage((ByteProcessor) ip).open(H).copyTo((ByteProcessor) ip);
+			return;
+		}
 		erode(ip,H);
 		dilate(ip,H);
 	}
 	
 	void close(ImageProcessor ip, int[][] H){
+		if (useBits(ip, H)) {
+			new BitImage((ByteProcessor) ip).close(H).copyTo((ByteProcessor) ip);
+			return;
+		}
 		dilate(ip,H);
 		erode(ip,H);
 	}
 	
 	void outline(ImageProcessor ip){
+		if (isBinary(ip)) {
+			new BitImage((ByteProcessor) ip).outline().copyTo((ByteProcessor) ip);
+			return;
+		}
 		int[][] H = {{0,1,0},
 			         {1,1,1},
 			         {0,1,0}
@@ -132,6 +169,87 @@ public class BinMorpher {
 		ip.copyBits(foreground,0,0,Blitter.DIFFERENCE);
 	}
 	
+	void thin(ImageProcessor ip){
+		if (!(ip instanceof ByteProcessor)) {
+			IJ.error("thinning requires an 8-bit image");
+			return;
+		}
+		Thinning.thin((ByteProcessor) ip);
+	}
+	
+	// structuring element decomposition
+	
+	// binary images are processed as bit images, unless line elements are faster
+	// (dilation and erosion have decompositions with the same number of lines)
+	boolean useBits(ImageProcessor ip, int[][] H) {
+		return isBinary(ip) && !useLines(ip, H, getLineDecomposition(H, false));
+	}
+	
+	// line elements are used for all 8-bit images, except for binary images
+	// with small structuring elements, which are faster processed as bit images
+	boolean useLines(ImageProcessor ip, int[][] H, LineMorpher[] L) {
+		if (L == null || !(ip instanceof ByteProcessor))
+			return false;
+		if (!isBinary(ip))
+			return true;
+		int n = 0;
+		for (int j = 0; j < H.length; j++) {
+			for (int i = 0; i < H[j].length; i++) {
+				if (H[j][i] > 0) n++;
+			}
+		}
+		return n > 64 * L.length;
+	}
+	
+	/*
+	 * Returns the line decomposition of H (or null if there is none): the
+	 * predefined decomposition of se or, if H is a (filled) rectangle, a
+	 * horizontal and a vertical line. As in erode(), the hot spot for erosion
+	 * is the center of the reflected structuring element.
+	 */
+	LineMorpher[] getLineDecomposition(int[][] H, boolean erode) {
+		if (H == se && lines != null)
+			return lines;
+		int ic = erode ? H[0].length / 2 : (H[0].length - 1) / 2;
+		int jc = erode ? H.length / 2 : (H.length - 1) / 2;
+		int left = Integer.MAX_VALUE, right = -1, top = Integer.MAX_VALUE, bottom = -1;
+		int n = 0;
+		for (int j = 0; j < H.length; j++) {
+			for (int i = 0; i < H[j].length; i++) {
+				if (H[j][i] > 0) {
+					left = Math.min(left, i); right = Math.max(right, i);
+					top = Math.min(top, j); bottom = Math.max(bottom, j);
+					n++;
+				}
+			}
+		}
+		int bw = right - left + 1;
+		int bh = bottom - top + 1;
+		if (n == 0 || n != bw * bh)
+			return null;	// not a rectangle
+		return new LineMorpher[] {
+				new LineMorpher(1, 0, bw, left - ic),
+				new LineMorpher(0, 1, bh, top - jc)};
+	}
+	
+	/*
+	 * Returns the structuring element composed of the given line elements
+	 * (i.e., their Minkowski sum), with the hot spot at the center.
+	 */
+	static int[][] makeStructuringElement(LineMorpher[] L) {
+		int px = 0, py = 0;
+		for (LineMorpher lm : L) {
+			px += lm.getExtentX();
+			py += lm.getExtentY();
+		}
+		int[][] H = new int[2 * py + 1][2 * px + 1];
+		H[py][px] = 1;
+		for (LineMorpher lm : L) {
+			lm.dilate(H);
+		}
+		return H;
+	}
+	
 	int[][] reflect(int[][] se) {
 		// mirrors the structuring element around the center (hot spot)
 		// used to implement erosion by a dilation
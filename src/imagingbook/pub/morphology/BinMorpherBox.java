@@ -14,13 +14,22 @@ import imagingbook.pub.morphology.BinMorpher;
 public class BinMorpherBox extends BinMorpher {
 	
 	BinMorpherBox(){
-		makeBox();
+		makeBox(3, 3);
 	}
 	
-	private void makeBox(){
-		se = new int[3][3];
-		for (int v = 0; v < 3; v++) {
-			for (int u = 0; u < 3; u++) {
+	/**
+	 * Creates a rectangular structuring element of the given size. Boxes are
+	 * processed as a horizontal and a vertical line element (see
+	 * {@link LineMorpher}), i.e., in constant time per pixel.
+	 */
+	public BinMorpherBox(int width, int height) {
+		makeBox(width, height);
+	}
+	
+	private void makeBox(int width, int height){
+		se = new int[height][width];
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
 				se[v][u] = 1;
 			}
 		}
@@ -11,22 +11,49 @@ package imagingbook.pub.morphology;
 
 import imagingbook.pub.morphology.BinMorpher;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary morphology with a disk-shaped structuring element. For radius >= 8
+ * the disk is (by default) approximated by a sequence of 8 periodic line
+ * elements in the directions (1,0), (0,1), (1,1), (1,-1), (2,1), (2,-1), (1,2),
+ * (1,-2), whose composite structuring element is a 16-sided polygon. Since each
+ * line element takes constant time per pixel, the computation time does not
+ * depend on the radius. The effective structuring element can be inspected
+ * with {@link #showFilter()}.
+ */
 public class BinMorpherDisk extends BinMorpher {
 	
+	// min. radius for which the disk is decomposed
+	static final double MIN_DECOMPOSITION_RADIUS = 8;
+	
 	BinMorpherDisk(){
-		makeDisk(1);
+		se = makeDisk(1);
 	}
 	
 	public BinMorpherDisk(double radius) {
-		makeDisk(radius);
-		
+		this(radius, true);
+	}
+	
+	/**
+	 * @param radius the radius of the disk
+	 * @param decompose if true, large disks are approximated by periodic lines,
+	 * otherwise the exact (digital) disk is used
+	 */
+	public BinMorpherDisk(double radius, boolean decompose) {
+		se = makeDisk(radius);
+		if (decompose && radius >= MIN_DECOMPOSITION_RADIUS) {
+			lines = makeDecomposition(radius);
+			se = makeStructuringElement(lines);
+		}
 	}
 	
-	private void makeDisk(double radius){
+	static int[][] makeDisk(double radius){
 		int r = (int) Math.rint(radius);
 		if (r <= 1) r = 1;
 		int size = r + r + 1;
-		se = new int[size][size];
+		int[][] se = new int[size][size];
 		double r2 = radius * radius;
 
 		for (int v = -r; v <= r; v++) {
@@ -35,6 +62,78 @@ public class BinMorpherDisk extends BinMorpher {
 					se[v + r][u + r] = 1;
 			}
 		}
+		return se;
+	}
+	
+	/*
+	 * The line lengths a (horizontal/vertical lines), b (diagonal lines) and
+	 * c (the remaining 4 lines, all measured in steps) are chosen such that the
+	 * support function of the composite polygon equals the radius in the directions
+	 * 0, 45 and atan(1/2) degrees, which gives a = 0.472 r, b = 0.230 r, c = 0.178 r.
+	 * The (even) integer lengths closest to the exact disk are selected from the
+	 * neighborhood of this solution.
+	 */
+	static LineMorpher[] makeDecomposition(double radius) {
+		int[] abc;
+		synchronized (lengthCache) {
+			abc = lengthCache.get(radius);
+		}
+		if (abc == null) {
+			abc = findLineLengths(radius);
+			synchronized (lengthCache) {
+				lengthCache.put(radius, abc);
+			}
+		}
+		return makeLines(abc[0], abc[1], abc[2]);
+	}
+	
+	// line lengths (a, b, c) selected for previously used radii
+	private static final Map<Double, int[]> lengthCache = new HashMap<Double, int[]>();
+	
+	private static int[] findLineLengths(double radius) {
+		int[][] disk = makeDisk(radius);
+		int[] abc = null;
+		int a0 = (int) Math.rint(0.236 * radius) * 2;
+		int b0 = (int) Math.rint(0.115 * radius) * 2;
+		int c0 = (int) Math.rint(0.089 * radius) * 2;
+		int minDiff = Integer.MAX_VALUE;
+		for (int a = Math.max(a0 - 4, 2); a <= a0 + 4; a += 2) {
+			for (int b = Math.max(b0 - 4, 0); b <= b0 + 4; b += 2) {
+				for (int c = Math.max(c0 - 2, 0); c <= c0 + 2; c += 2) {
+					int[][] H = makeStructuringElement(makeLines(a, b, c));
+					int diff = countDifferences(disk, H);
+					if (diff < minDiff) {
+						minDiff = diff;
+						abc = new int[] {a, b, c};
+					}
+				}
+			}
+		}
+		return abc;
+	}
+	
+	private static LineMorpher[] makeLines(int a, int b, int c) {
+		return new LineMorpher[] {
+			new LineMorpher(1, 0, a + 1), new LineMorpher(0, 1, a + 1),
+			new LineMorpher(1, 1, b + 1), new LineMorpher(1, -1, b + 1),
+			new LineMorpher(2, 1, c + 1), new LineMorpher(2, -1, c + 1),
+			new LineMorpher(1, 2, c + 1), new LineMorpher(1, -2, c + 1)};
+	}
+	
+	// counts the elements which differ in H1 and H2 (both square, with odd size and centered)
+	private static int countDifferences(int[][] H1, int[][] H2) {
+		int r1 = H1.length / 2;
+		int r2 = H2.length / 2;
+		int r = Math.max(r1, r2);
+		int n = 0;
+		for (int v = -r; v <= r; v++) {
+			for (int u = -r; u <= r; u++) {
+				boolean in1 = Math.abs(u) <= r1 && Math.abs(v) <= r1 && H1[v + r1][u + r1] > 0;
+				boolean in2 = Math.abs(u) <= r2 && Math.abs(v) <= r2 && H2[v + r2][u + r2] > 0;
+				if (in1 != in2) n++;
+			}
+		}
+		return n;
 	}
 	
 }
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.Parallel;
+
+/**
+ * Binary image with 64 pixels packed into each {@code long} word. Pixel (u,v)
+ * is bit (u % 64) of word (u / 64) in row v, unused bits at the end of each row
+ * are always zero. Dilation and erosion with an arbitrary structuring element
+ * are calculated row by row with word-level shifts and OR/AND operations, i.e.,
+ * 64 pixels are processed at once for every element of the structuring element.
+ * Image rows are processed in parallel. As in {@link BinMorpher}, pixels outside
+ * the image are treated as background for dilation and as foreground for erosion.
+ */
+public class BitImage {
+
+	private final int width;
+	private final int height;
+	private final int wpr;			// words per row
+	private final long padMask;		// unused bits of the last word in each row
+	private final long[] bits;
+
+	public BitImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wpr = (width + 63) >>> 6;
+		this.padMask = ((width & 63) == 0) ? 0 : -1L << (width & 63);
+		this.bits = new long[wpr * height];
+	}
+
+	/**
+	 * Creates a bit image from a byte image, all nonzero pixels are foreground.
+	 */
+	public BitImage(ByteProcessor ip) {
+		this(ip.getWidth(), ip.getHeight());
+		final byte[] pixels = (byte[]) ip.getPixels();
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				if (pixels[u + v * width] != 0) {
+					bits[v * wpr + (u >>> 6)] |= 1L << u;
+				}
+			}
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean get(int u, int v) {
+		if (u < 0 || v < 0 || u >= width || v >= height)
+			return false;
+		return (bits[v * wpr + (u >>> 6)] & (1L << u)) != 0;
+	}
+
+	public void set(int u, int v, boolean value) {
+		if (value)
+			bits[v * wpr + (u >>> 6)] |= 1L << u;
+		else
+			bits[v * wpr + (u >>> 6)] &= ~(1L << u);
+	}
+
+	/**
+	 * Copies this image into the given byte image (of the same size),
+	 * foreground pixels are set to 255, background pixels to 0.
+	 */
+	public void copyTo(ByteProcessor ip) {
+		final byte[] pixels = (byte[]) ip.getPixels();
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				boolean fg = (bits[v * wpr + (u >>> 6)] & (1L << u)) != 0;
+				pixels[u + v * width] = fg ? (byte) 255 : 0;
+			}
+		}
+	}
+
+	public ByteProcessor toByteProcessor() {
+		ByteProcessor ip = new ByteProcessor(width, height);
+		copyTo(ip);
+		return ip;
+	}
+
+	public BitImage duplicate() {
+		BitImage bi = new BitImage(width, height);
+		System.arraycopy(bits, 0, bi.bits, 0, bits.length);
+		return bi;
+	}
+
+	// ------- morphological operations --------------------------
+
+	/**
+	 * Dilation with the structuring element H (hot spot at the center of H).
+	 */
+	public BitImage dilate(int[][] H) {
+		return apply(H, false);
+	}
+
+	/**
+	 * Erosion with the structuring element H (hot spot at the center of the
+	 * reflected H, as in {@link BinMorpher}, which differs for even sizes of H).
+	 */
+	public BitImage erode(int[][] H) {
+		return apply(H, true);
+	}
+
+	public BitImage open(int[][] H) {
+		return erode(H).dilate(H);
+	}
+
+	public BitImage close(int[][] H) {
+		return dilate(H).erode(H);
+	}
+
+	/**
+	 * Returns the foreground pixels which are 4-connected to the background.
+	 */
+	public BitImage outline() {
+		int[][] H = {{0,1,0},
+			         {1,1,1},
+			         {0,1,0}
+			        };
+		BitImage result = erode(H);
+		for (int i = 0; i < bits.length; i++) {
+			result.bits[i] = bits[i] & ~result.bits[i];
+		}
+		return result;
+	}
+
+	// ------- nonpublic methods --------------------------
+
+	/*
+	 * Dilation: result(u,v) = OR  of I(u - i, v - j) for all (i,j) in H,
+	 * erosion:  result(u,v) = AND of I(u + i, v + j) for all (i,j) in H,
+	 * with (i,j) relative to the hot spot (ic,jc).
+	 */
+	private BitImage apply(int[][] H, final boolean erode) {
+		final int ic = erode ? H[0].length / 2 : (H[0].length - 1) / 2;
+		final int jc = erode ? H.length / 2 : (H.length - 1) / 2;
+		// collect the offsets of all elements of H:
+		int n = 0;
+		for (int j = 0; j < H.length; j++) {
+			for (int i = 0; i < H[j].length; i++) {
+				if (H[j][i] > 0) n++;
+			}
+		}
+		final int[] di = new int[n];
+		final int[] dj = new int[n];
+		n = 0;
+		for (int j = 0; j < H.length; j++) {
+			for (int i = 0; i < H[j].length; i++) {
+				if (H[j][i] > 0) {
+					di[n] = erode ? i - ic : ic - i;	// source offsets
+					dj[n] = erode ? j - jc : jc - j;
+					n++;
+				}
+			}
+		}
+		final int cnt = n;
+		final long fill = erode ? -1L : 0L;		// value of pixels outside the image
+		final BitImage result = new BitImage(width, height);
+		Parallel.forBands(height, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				long[] buf = new long[wpr];
+				for (int v = from; v < to; v++) {
+					final int off = v * wpr;
+					for (int k = 0; k < wpr; k++) {
+						result.bits[off + k] = fill;
+					}
+					for (int e = 0; e < cnt; e++) {
+						getShiftedRow(v + dj[e], di[e], fill, buf);
+						if (erode) {
+							for (int k = 0; k < wpr; k++)
+								result.bits[off + k] &= buf[k];
+						}
+						else {
+							for (int k = 0; k < wpr; k++)
+								result.bits[off + k] |= buf[k];
+						}
+					}
+					result.bits[off + wpr - 1] &= ~padMask;
+				}
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * Stores the pixels I(u + s, v), for u = 0,...,width-1, in buf,
+	 * pixels outside the image are set to fill.
+	 */
+	private void getShiftedRow(int v, int s, long fill, long[] buf) {
+		if (v < 0 || v >= height) {
+			for (int k = 0; k < wpr; k++)
+				buf[k] = fill;
+			return;
+		}
+		final int ws = s >> 6;		// word shift (rounded towards -infinity)
+		final int bs = s & 63;		// bit shift
+		final int off = v * wpr;
+		if (bs == 0) {
+			for (int k = 0; k < wpr; k++)
+				buf[k] = getWord(off, k + ws, fill);
+		}
+		else {
+			long w0 = getWord(off, ws, fill);
+			for (int k = 0; k < wpr; k++) {
+				long w1 = getWord(off, k + ws + 1, fill);
+				buf[k] = (w0 >>> bs) | (w1 << (64 - bs));
+				w0 = w1;
+			}
+		}
+	}
+
+	// returns word k of the row starting at off, with all pixels outside the image set to fill
+	private long getWord(int off, int k, long fill) {
+		if (k < 0 || k >= wpr)
+			return fill;
+		else if (k == wpr - 1)
+			return bits[off + k] | (fill & padMask);
+		else
+			return bits[off + k];
+	}
+
+}
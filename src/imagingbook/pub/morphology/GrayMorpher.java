@@ -0,0 +1,115 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+import ij.process.Blitter;
+import ij.process.ImageProcessor;
+
+/**
+ * Grayscale morphology with flat structuring elements, for 8-bit, 16-bit and
+ * float images. The structuring element is specified as a sequence of line
+ * elements (see {@link LineMorpher}), the composite structuring element being
+ * their Minkowski sum (e.g., a horizontal and a vertical line for a rectangle).
+ * Every line element takes constant time per pixel (van Herk/Gil-Werman) and
+ * is processed in parallel. Pixels outside the image are ignored, i.e., they
+ * are treated as the min. value for dilation and as the max. value for erosion.
+ */
+public class GrayMorpher {
+	
+	LineMorpher[] lines;	// decomposition of the structuring element
+	
+	public static enum Operation {
+		Dilation, Erosion, Opening, Closing, TopHat, BlackTopHat, Gradient;
+	}
+	
+	public static String[] getOpNames() {
+		Operation[] ops = Operation.values();
+		String[] strgs = new String[ops.length];
+		int i = 0;
+		for (Operation op: ops) {
+			strgs[i++] = op.name();
+		}
+		return strgs;
+	}
+	
+	// constructor methods
+	
+	GrayMorpher() {
+	}
+	
+	public GrayMorpher(LineMorpher[] lines) {
+		this.lines = lines.clone();
+	}
+	
+	public void apply(ImageProcessor ip, Operation op) {
+		switch(op) {
+			case Dilation: this.dilate(ip); break;
+			case Erosion: this.erode(ip); break;
+			case Opening: this.open(ip); break;
+			case Closing: this.close(ip); break;
+			case TopHat: this.topHat(ip); break;
+			case BlackTopHat: this.blackTopHat(ip); break;
+			case Gradient: this.gradient(ip); break;
+			default: throw new Error("GrayMorpher: unknown operation " + op);
+		}
+	}
+	
+	// morphology methods
+	
+	public void dilate(ImageProcessor ip) {
+		LineMorpher.dilate(ip, lines);
+	}
+	
+	public void erode(ImageProcessor ip) {
+		LineMorpher.erode(ip, lines);
+	}
+	
+	public void open(ImageProcessor ip) {
+		erode(ip);
+		dilate(ip);
+	}
+	
+	public void close(ImageProcessor ip) {
+		dilate(ip);
+		erode(ip);
+	}
+	
+	/**
+	 * White top-hat (ip - opening), i.e., bright details smaller than
+	 * the structuring element.
+	 */
+	public void topHat(ImageProcessor ip) {
+		ImageProcessor opened = ip.duplicate();
+		open(opened);
+		ip.copyBits(opened, 0, 0, Blitter.SUBTRACT);
+	}
+	
+	/**
+	 * Black top-hat (closing - ip), i.e., dark details smaller than
+	 * the structuring element.
+	 */
+	public void blackTopHat(ImageProcessor ip) {
+		ImageProcessor closed = ip.duplicate();
+		close(closed);
+		closed.copyBits(ip, 0, 0, Blitter.SUBTRACT);
+		ip.copyBits(closed, 0, 0, Blitter.COPY);
+	}
+	
+	/**
+	 * Morphological gradient (dilation - erosion).
+	 */
+	public void gradient(ImageProcessor ip) {
+		ImageProcessor eroded = ip.duplicate();
+		erode(eroded);
+		dilate(ip);
+		ip.copyBits(eroded, 0, 0, Blitter.SUBTRACT);
+	}
+	
+}
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+/**
+ * Grayscale morphology with a rectangular structuring element (hot spot at the
+ * center), decomposed into a horizontal and a vertical line element.
+ */
+public class GrayMorpherBox extends GrayMorpher {
+	
+	public GrayMorpherBox(int width, int height) {
+		lines = new LineMorpher[] {
+				new LineMorpher(1, 0, width),
+				new LineMorpher(0, 1, height)};
+	}
+	
+}
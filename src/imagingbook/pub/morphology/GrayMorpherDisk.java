@@ -0,0 +1,130 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+import ij.process.Blitter;
+import ij.process.ImageProcessor;
+
+/**
+ * Grayscale morphology with a disk-shaped structuring element. By default,
+ * disks with radius >= 8 are approximated by periodic line elements, exactly as
+ * in {@link BinMorpherDisk}, which takes constant time per pixel. Otherwise the
+ * exact disk is used, which is decomposed into its rows, i.e., horizontal line
+ * elements with vertical offsets, which takes time proportional to the radius.
+ */
+public class GrayMorpherDisk extends GrayMorpher {
+	
+	private final int[][] disk;		// exact disk (used if lines == null)
+	
+	public GrayMorpherDisk(double radius) {
+		this(radius, true);
+	}
+	
+	/**
+	 * @param radius the radius of the disk
+	 * @param decompose if true, large disks are approximated by periodic lines,
+	 * otherwise the exact (digital) disk is used
+	 */
+	public GrayMorpherDisk(double radius, boolean decompose) {
+		disk = BinMorpherDisk.makeDisk(radius);
+		if (decompose && radius >= BinMorpherDisk.MIN_DECOMPOSITION_RADIUS) {
+			lines = BinMorpherDisk.makeDecomposition(radius);
+		}
+	}
+	
+	private GrayMorpherDisk(int[][] disk) {
+		this.disk = disk;
+	}
+	
+	/**
+	 * Returns a morpher with the exact disk of the same shape as the kernel of
+	 * ImageJ's RankFilters (u^2 + v^2 <= floor(r^2) + 1, with r adjusted to 1.75
+	 * for 1.5 <= r < 1.75 and to 2.85 for 2.5 <= r < 2.85), such that erosion and
+	 * dilation give the same results as the MIN and MAX rank filters.
+	 */
+	public static GrayMorpherDisk makeRankFilterDisk(double radius) {
+		if (radius >= 1.5 && radius < 1.75)
+			radius = 1.75;
+		else if (radius >= 2.5 && radius < 2.85)
+			radius = 2.85;
+		int r2 = (int) (radius * radius) + 1;
+		int r = (int) Math.sqrt(r2 + 1e-10);
+		int[][] disk = new int[2 * r + 1][2 * r + 1];
+		for (int v = -r; v <= r; v++) {
+			int w = (int) Math.sqrt(r2 - v * v + 1e-10);	// half-width of row v
+			for (int u = -w; u <= w; u++) {
+				disk[v + r][u + r] = 1;
+			}
+		}
+		return new GrayMorpherDisk(disk);
+	}
+	
+	@Override
+	public void dilate(ImageProcessor ip) {
+		if (lines != null)
+			super.dilate(ip);
+		else
+			applyRows(ip, false);
+	}
+	
+	@Override
+	public void erode(ImageProcessor ip) {
+		if (lines != null)
+			super.erode(ip);
+		else
+			applyRows(ip, true);
+	}
+	
+	/*
+	 * The disk is the union of its rows j = -r,...,r, each a horizontal line
+	 * with half-width w_j. Thus the result is the max. (min.) of the images
+	 * filtered with these lines, shifted vertically by j. Since w_j = w_-j,
+	 * each distinct line is applied only once.
+	 */
+	private void applyRows(ImageProcessor ip, boolean erode) {
+		final int r = disk.length / 2;
+		final int mode = erode ? Blitter.MIN : Blitter.MAX;
+		ImageProcessor orig = ip.duplicate();
+		ImageProcessor tmp = null;
+		int wPrev = -1;
+		for (int j = 0; j <= r; j++) {
+			int w = getHalfWidth(j);
+			if (w < 0)	// row j (and all following) is empty
+				break;
+			if (w != wPrev) {
+				tmp = orig.duplicate();
+				LineMorpher lm = new LineMorpher(1, 0, 2 * w + 1);
+				if (erode)
+					lm.erode(tmp);
+				else
+					lm.dilate(tmp);
+				wPrev = w;
+			}
+			if (j == 0) {
+				ip.copyBits(tmp, 0, 0, Blitter.COPY);
+			}
+			else {
+				ip.copyBits(tmp, 0, j, mode);
+				ip.copyBits(tmp, 0, -j, mode);
+			}
+		}
+	}
+	
+	// half-width of row j of the disk (-1 if the row is empty)
+	private int getHalfWidth(int j) {
+		int r = disk.length / 2;
+		int n = 0;
+		for (int i = 0; i < disk[r + j].length; i++) {
+			if (disk[r + j][i] > 0) n++;
+		}
+		return (n == 0) ? -1 : (n - 1) / 2;
+	}
+	
+}
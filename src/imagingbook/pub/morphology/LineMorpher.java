@@ -0,0 +1,337 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import imagingbook.lib.util.Parallel;
+
+import java.util.Arrays;
+
+/**
+ * Dilation and erosion of 8-bit, 16-bit and float images with a flat structuring element in the
+ * shape of a (periodic) line L = { m * (dx,dy) | m = m0,...,m0+k-1 }, using the
+ * algorithm by van Herk and Gil/Werman. The image is split into the digital lines
+ * of direction (dx,dy), and the max/min over a sliding window of k consecutive
+ * pixels is calculated for each of them with only 3 comparisons per pixel,
+ * independent of k. The lines of the image are processed in parallel.
+ * As in {@link BinMorpher}, pixels outside the image are treated as the min. pixel
+ * value (0 or -infinity) for dilation and as the max. pixel value (255, 65535 or
+ * +infinity) for erosion. Larger structuring elements (boxes, disks) are
+ * decomposed into a sequence of such line elements.
+ */
+public class LineMorpher {
+
+	private final int dx, dy;	// line direction (dy > 0 or dy == 0 and dx > 0)
+	private final int k;		// number of elements
+	private final int m0;		// index of the first element
+
+	/**
+	 * Creates a line with k elements in direction (dx,dy), centered at
+	 * the origin (for even k, the extra element is on the positive side).
+	 */
+	public LineMorpher(int dx, int dy, int k) {
+		this(dx, dy, k, -((k - 1) / 2));
+	}
+
+	/**
+	 * Creates a line with elements m * (dx,dy), for m = m0,...,m0+k-1.
+	 */
+	public LineMorpher(int dx, int dy, int k, int m0) {
+		if (dx == 0 && dy == 0)
+			throw new IllegalArgumentException("line direction must not be zero");
+		if (k < 1)
+			throw new IllegalArgumentException("line must have at least one element");
+		if (dy < 0 || (dy == 0 && dx < 0)) {	// normalize the direction
+			dx = -dx; dy = -dy;
+			m0 = -(m0 + k - 1);
+		}
+		this.dx = dx;
+		this.dy = dy;
+		this.k = k;
+		this.m0 = m0;
+	}
+
+	/**
+	 * Returns the max. horizontal distance of the line elements from the origin.
+	 */
+	public int getExtentX() {
+		return Math.max(Math.abs(m0), Math.abs(m0 + k - 1)) * Math.abs(dx);
+	}
+
+	/**
+	 * Returns the max. vertical distance of the line elements from the origin.
+	 */
+	public int getExtentY() {
+		return Math.max(Math.abs(m0), Math.abs(m0 + k - 1)) * dy;
+	}
+
+	/**
+	 * Returns the reflected line (all elements mirrored at the origin).
+	 */
+	public LineMorpher reflect() {
+		return new LineMorpher(dx, dy, k, -(m0 + k - 1));
+	}
+
+	/**
+	 * result(x) = max { I(x - m * d) | m = m0,...,m0+k-1 }
+	 */
+	public void dilate(ImageProcessor ip) {
+		// the window for sequence index j is j - (m0+k-1),...,j - m0
+		apply(ip, -(m0 + k - 1), true);
+	}
+
+	/**
+	 * result(x) = min { I(x + m * d) | m = m0,...,m0+k-1 }
+	 */
+	public void erode(ImageProcessor ip) {
+		// the window for sequence index j is j + m0,...,j + m0+k-1
+		apply(ip, m0, false);
+	}
+
+	/**
+	 * Dilation with the composite structuring element (Minkowski sum) of the
+	 * line elements L, which are applied one after the other. The image is padded
+	 * by the size of the composite element, such that intermediate results outside
+	 * the image are retained and the result is the same as with the composite element.
+	 */
+	public static void dilate(ImageProcessor ip, LineMorpher[] L) {
+		applySequence(ip, L, false);
+	}
+
+	/**
+	 * Erosion with the composite structuring element of the line elements L
+	 * (see {@link #dilate(ImageProcessor, LineMorpher[])}).
+	 */
+	public static void erode(ImageProcessor ip, LineMorpher[] L) {
+		applySequence(ip, L, true);
+	}
+
+	// ------- nonpublic methods --------------------------
+
+	/*
+	 * Dilation of the binary array H (H[v][u] > 0 is foreground) in place, by a
+	 * sequential pass with prefix counts along each digital line, i.e., O(size of H)
+	 * independent of k. Used for constructing composite structuring elements.
+	 */
+	void dilate(int[][] H) {
+		final int h = H.length;
+		final int w = H[0].length;
+		final int lo = -(m0 + k - 1);	// the window for sequence index j is j+lo,...,j+hi
+		final int hi = -m0;
+		int[] cnt = new int[Math.max(w, h) + 1];	// cnt[j] = number of foreground elements before j
+		for (int p0 : getLineStarts(w, h)) {
+			final int u0 = p0 % w;
+			final int v0 = p0 / w;
+			final int n = getLineLength(u0, v0, w, h);
+			for (int j = 0; j < n; j++) {
+				cnt[j + 1] = cnt[j] + ((H[v0 + j * dy][u0 + j * dx] > 0) ? 1 : 0);
+			}
+			for (int j = 0; j < n; j++) {
+				int a = Math.max(j + lo, 0);
+				int b = Math.min(j + hi + 1, n);
+				H[v0 + j * dy][u0 + j * dx] = (b > a && cnt[b] > cnt[a]) ? 1 : 0;
+			}
+		}
+	}
+
+	private static void applySequence(ImageProcessor ip, LineMorpher[] L, boolean erode) {
+		int px = 0, py = 0;
+		for (LineMorpher lm : L) {
+			px += lm.getExtentX();
+			py += lm.getExtentY();
+		}
+		ImageProcessor tmp = ip.createProcessor(ip.getWidth() + 2 * px, ip.getHeight() + 2 * py);
+		float fill = erode ? getMaxValue(ip) : getMinValue(ip);
+		Object pixels = tmp.getPixels();
+		if (pixels instanceof byte[])
+			Arrays.fill((byte[]) pixels, (byte) fill);
+		else if (pixels instanceof short[])
+			Arrays.fill((short[]) pixels, (short) fill);
+		else if (pixels instanceof float[])
+			Arrays.fill((float[]) pixels, fill);
+		tmp.insert(ip, px, py);
+		for (LineMorpher lm : L) {
+			if (erode)
+				lm.erode(tmp);
+			else
+				lm.dilate(tmp);
+		}
+		tmp.setRoi(px, py, ip.getWidth(), ip.getHeight());
+		ip.insert(tmp.crop(), 0, 0);
+	}
+
+	// min. pixel value (neutral element of dilation)
+	static float getMinValue(ImageProcessor ip) {
+		checkType(ip);
+		return (ip instanceof FloatProcessor) ? Float.NEGATIVE_INFINITY : 0;
+	}
+
+	// max. pixel value (neutral element of erosion)
+	static float getMaxValue(ImageProcessor ip) {
+		checkType(ip);
+		if (ip instanceof ByteProcessor)
+			return 255;
+		else if (ip instanceof ShortProcessor)
+			return 65535;
+		else
+			return Float.POSITIVE_INFINITY;
+	}
+
+	static void checkType(ImageProcessor ip) {
+		if (!(ip instanceof ByteProcessor || ip instanceof ShortProcessor || ip instanceof FloatProcessor))
+			throw new IllegalArgumentException("only 8-bit, 16-bit and float images are supported");
+	}
+
+	/*
+	 * Every pixel belongs to exactly one digital line p0, p0 + d, p0 + 2d,...,
+	 * where p0 - d is outside the image. Since these lines are disjoint, they
+	 * can be processed in place and in parallel.
+	 */
+	private void apply(ImageProcessor ip, final int a, final boolean max) {
+		final float fill = max ? getMinValue(ip) : getMaxValue(ip);
+		if (k == 1 && a == 0)
+			return;
+		final int w = ip.getWidth();
+		final int h = ip.getHeight();
+		final Object pixels = ip.getPixels();
+		final int[] starts = getLineStarts(w, h);
+		final int maxLen = (dx == 0) ? (h + dy - 1) / dy :
+			(dy == 0) ? (w + dx - 1) / dx : Math.min((h + dy - 1) / dy, (w + Math.abs(dx) - 1) / Math.abs(dx));
+		final int step = dx + dy * w;
+		Parallel.forBands(starts.length, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				float[] seq = new float[maxLen];
+				float[] e = new float[maxLen + k - 1];
+				float[] g = new float[maxLen + k - 1];
+				float[] f = new float[maxLen + k - 1];
+				for (int s = from; s < to; s++) {
+					int p0 = starts[s];
+					int n = getLineLength(p0 % w, p0 / w, w, h);
+					getLine(pixels, p0, step, n, seq);
+					slidingWindow(seq, n, a, max, fill, e, g, f);
+					putLine(pixels, p0, step, n, seq);
+				}
+			}
+		});
+	}
+
+	// number of pixels on the line starting at (u,v)
+	private int getLineLength(int u, int v, int w, int h) {
+		int n = (dy > 0) ? (h - 1 - v) / dy + 1 : Integer.MAX_VALUE;
+		if (dx > 0)
+			n = Math.min(n, (w - 1 - u) / dx + 1);
+		else if (dx < 0)
+			n = Math.min(n, u / -dx + 1);
+		return n;
+	}
+
+	private static void getLine(Object pixels, int p0, int step, int n, float[] seq) {
+		if (pixels instanceof byte[]) {
+			byte[] px = (byte[]) pixels;
+			for (int i = 0, p = p0; i < n; i++, p += step)
+				seq[i] = px[p] & 0xFF;
+		}
+		else if (pixels instanceof short[]) {
+			short[] px = (short[]) pixels;
+			for (int i = 0, p = p0; i < n; i++, p += step)
+				seq[i] = px[p] & 0xFFFF;
+		}
+		else {
+			float[] px = (float[]) pixels;
+			for (int i = 0, p = p0; i < n; i++, p += step)
+				seq[i] = px[p];
+		}
+	}
+
+	private static void putLine(Object pixels, int p0, int step, int n, float[] seq) {
+		if (pixels instanceof byte[]) {
+			byte[] px = (byte[]) pixels;
+			for (int i = 0, p = p0; i < n; i++, p += step)
+				px[p] = (byte) (int) seq[i];
+		}
+		else if (pixels instanceof short[]) {
+			short[] px = (short[]) pixels;
+			for (int i = 0, p = p0; i < n; i++, p += step)
+				px[p] = (short) (int) seq[i];
+		}
+		else {
+			float[] px = (float[]) pixels;
+			for (int i = 0, p = p0; i < n; i++, p += step)
+				px[p] = seq[i];
+		}
+	}
+
+	/*
+	 * van Herk/Gil-Werman: replaces s[j] by the max (min) of s[j+a],...,s[j+a+k-1],
+	 * for j = 0,...,n-1 (values outside the sequence are set to fill).
+	 * e is the extended sequence, g holds the prefix and f the suffix max (min)
+	 * within blocks of k elements.
+	 */
+	private void slidingWindow(float[] s, int n, int a, boolean max, float fill, float[] e, float[] g, float[] f) {
+		final int len = n + k - 1;
+		for (int i = 0; i < len; i++) {
+			int t = a + i;
+			e[i] = (t >= 0 && t < n) ? s[t] : fill;
+		}
+		for (int b = 0; b < len; b += k) {		// blocks of k elements
+			final int end = Math.min(b + k, len) - 1;
+			g[b] = e[b];
+			f[end] = e[end];
+			if (max) {
+				for (int i = b + 1; i <= end; i++)
+					g[i] = (e[i] > g[i - 1]) ? e[i] : g[i - 1];
+				for (int i = end - 1; i >= b; i--)
+					f[i] = (e[i] > f[i + 1]) ? e[i] : f[i + 1];
+			}
+			else {
+				for (int i = b + 1; i <= end; i++)
+					g[i] = (e[i] < g[i - 1]) ? e[i] : g[i - 1];
+				for (int i = end - 1; i >= b; i--)
+					f[i] = (e[i] < f[i + 1]) ? e[i] : f[i + 1];
+			}
+		}
+		// the window j,...,j+k-1 consists of the end of one block and the start of the next:
+		if (max) {
+			for (int j = 0; j < n; j++)
+				s[j] = (g[j + k - 1] > f[j]) ? g[j + k - 1] : f[j];
+		}
+		else {
+			for (int j = 0; j < n; j++)
+				s[j] = (g[j + k - 1] < f[j]) ? g[j + k - 1] : f[j];
+		}
+	}
+
+	// returns the (linear) indices of all pixels p with p - (dx,dy) outside the image
+	private int[] getLineStarts(int w, int h) {
+		final int ax = Math.min(Math.abs(dx), w);	// number of start pixels at the left/right border
+		final int ry = Math.min(dy, h);				// number of rows consisting of start pixels only
+		int[] starts = new int[ry * w + (h - ry) * ax];
+		int n = 0;
+		for (int v = 0; v < h; v++) {
+			if (v < ry) {
+				for (int u = 0; u < w; u++)
+					starts[n++] = u + v * w;
+			}
+			else if (dx > 0) {
+				for (int u = 0; u < ax; u++)
+					starts[n++] = u + v * w;
+			}
+			else if (dx < 0) {
+				for (int u = w - ax; u < w; u++)
+					starts[n++] = u + v * w;
+			}
+		}
+		return starts;
+	}
+
+}
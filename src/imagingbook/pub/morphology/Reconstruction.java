@@ -0,0 +1,274 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import imagingbook.lib.util.IntDeque;
+
+/**
+ * Morphological reconstruction of 8-bit, 16-bit and float images (binary images
+ * are handled as grayscale images with values 0 and 255), using the hybrid
+ * algorithm by L. Vincent ("Morphological grayscale reconstruction in image
+ * analysis: applications and efficient algorithms", IEEE Trans. Image Processing
+ * 2(2), 1993). A forward and a backward raster scan are followed by a FIFO-based
+ * propagation which only visits pixels whose values are still changing, i.e.,
+ * the work is O(pixels), independent of the propagation distance.
+ * Hole filling, removal of border objects and regional extrema are implemented
+ * on top of it. All methods modify the given image.
+ */
+public class Reconstruction {
+
+	private final int width;
+	private final int height;
+	private final boolean connect8;
+
+	private Reconstruction(int width, int height, boolean connect8) {
+		this.width = width;
+		this.height = height;
+		this.connect8 = connect8;
+	}
+
+	// ------- public methods --------------------------
+
+	/**
+	 * Reconstruction by dilation of marker under mask (8-connected). The result
+	 * (which is <= mask) replaces the marker image.
+	 */
+	public static void reconstructByDilation(ImageProcessor marker, ImageProcessor mask) {
+		reconstructByDilation(marker, mask, true);
+	}
+
+	/**
+	 * Reconstruction by dilation of marker under mask, with 8- or 4-connectivity.
+	 * The result (which is <= mask) replaces the marker image.
+	 */
+	public static void reconstructByDilation(ImageProcessor marker, ImageProcessor mask, boolean connect8) {
+		checkSize(marker, mask);
+		float[] J = getValues(marker);
+		float[] I = getValues(mask);
+		new Reconstruction(marker.getWidth(), marker.getHeight(), connect8).reconstruct(J, I);
+		setValues(marker, J);
+	}
+
+	/**
+	 * Reconstruction by erosion of marker above mask (8-connected). The result
+	 * (which is >= mask) replaces the marker image.
+	 */
+	public static void reconstructByErosion(ImageProcessor marker, ImageProcessor mask) {
+		reconstructByErosion(marker, mask, true);
+	}
+
+	/**
+	 * Reconstruction by erosion of marker above mask, with 8- or 4-connectivity.
+	 * The result (which is >= mask) replaces the marker image.
+	 */
+	public static void reconstructByErosion(ImageProcessor marker, ImageProcessor mask, boolean connect8) {
+		checkSize(marker, mask);
+		float[] J = getValues(marker);
+		float[] I = getValues(mask);
+		negate(J);
+		negate(I);
+		new Reconstruction(marker.getWidth(), marker.getHeight(), connect8).reconstruct(J, I);
+		negate(J);
+		setValues(marker, J);
+	}
+
+	/**
+	 * Fills all holes of ip, i.e., the (4-connected) background regions or dark
+	 * basins which are not connected to the image border. This is the reconstruction
+	 * by erosion of ip from its border values.
+	 */
+	public static void fillHoles(ImageProcessor ip) {
+		float[] I = getValues(ip);
+		float[] J = new float[I.length];
+		final int w = ip.getWidth();
+		final int h = ip.getHeight();
+		for (int v = 0; v < h; v++) {
+			for (int u = 0; u < w; u++) {
+				int p = u + v * w;
+				J[p] = isBorder(u, v, w, h) ? -I[p] : Float.NEGATIVE_INFINITY;
+			}
+		}
+		negate(I);
+		new Reconstruction(w, h, false).reconstruct(J, I);
+		negate(J);
+		setValues(ip, J);
+	}
+
+	/**
+	 * Removes all (8-connected) foreground regions or bright structures which are
+	 * connected to the image border, by subtracting the reconstruction by dilation
+	 * of ip from its border values.
+	 */
+	public static void clearBorder(ImageProcessor ip) {
+		float[] I = getValues(ip);
+		float[] J = new float[I.length];
+		final int w = ip.getWidth();
+		final int h = ip.getHeight();
+		for (int v = 0; v < h; v++) {
+			for (int u = 0; u < w; u++) {
+				int p = u + v * w;
+				J[p] = isBorder(u, v, w, h) ? I[p] : Float.NEGATIVE_INFINITY;
+			}
+		}
+		new Reconstruction(w, h, true).reconstruct(J, I);
+		for (int p = 0; p < I.length; p++) {
+			J[p] = I[p] - J[p];
+		}
+		setValues(ip, J);
+	}
+
+	/**
+	 * Returns a binary image of the regional maxima of ip (8-connected plateaus
+	 * without higher neighbors), which are set to 255.
+	 */
+	public static ByteProcessor regionalMaxima(ImageProcessor ip) {
+		return regionalExtrema(ip, true);
+	}
+
+	/**
+	 * Returns a binary image of the regional minima of ip (8-connected plateaus
+	 * without lower neighbors), which are set to 255.
+	 */
+	public static ByteProcessor regionalMinima(ImageProcessor ip) {
+		return regionalExtrema(ip, false);
+	}
+
+	// ------- nonpublic methods --------------------------
+
+	/*
+	 * The marker is lowered by the smallest possible amount, such that after
+	 * reconstruction only the regional maxima remain below the original image.
+	 */
+	private static ByteProcessor regionalExtrema(ImageProcessor ip, boolean maxima) {
+		float[] I = getValues(ip);
+		if (!maxima)
+			negate(I);
+		float[] J = new float[I.length];
+		for (int p = 0; p < I.length; p++) {
+			J[p] = Math.nextAfter(I[p], Double.NEGATIVE_INFINITY);
+		}
+		new Reconstruction(ip.getWidth(), ip.getHeight(), true).reconstruct(J, I);
+		ByteProcessor result = new ByteProcessor(ip.getWidth(), ip.getHeight());
+		byte[] pixels = (byte[]) result.getPixels();
+		for (int p = 0; p < I.length; p++) {
+			if (J[p] < I[p])
+				pixels[p] = (byte) 255;
+		}
+		return result;
+	}
+
+	/*
+	 * Hybrid reconstruction by dilation of marker J under mask I (both of size
+	 * width x height), the result replaces J.
+	 */
+	private void reconstruct(float[] J, float[] I) {
+		for (int p = 0; p < J.length; p++) {
+			if (J[p] > I[p]) J[p] = I[p];
+		}
+		// Step 1: forward scan, propagating from the neighbors above and to the left:
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				int p = u + v * width;
+				float m = J[p];
+				if (u > 0 && J[p - 1] > m) m = J[p - 1];
+				if (v > 0) {
+					if (J[p - width] > m) m = J[p - width];
+					if (connect8) {
+						if (u > 0 && J[p - width - 1] > m) m = J[p - width - 1];
+						if (u < width - 1 && J[p - width + 1] > m) m = J[p - width + 1];
+					}
+				}
+				J[p] = (m < I[p]) ? m : I[p];
+			}
+		}
+		// Step 2: backward scan, pixels which may still propagate are put into the queue:
+		IntDeque queue = new IntDeque();
+		for (int v = height - 1; v >= 0; v--) {
+			for (int u = width - 1; u >= 0; u--) {
+				int p = u + v * width;
+				float m = J[p];
+				if (u < width - 1 && J[p + 1] > m) m = J[p + 1];
+				if (v < height - 1) {
+					if (J[p + width] > m) m = J[p + width];
+					if (connect8) {
+						if (u < width - 1 && J[p + width + 1] > m) m = J[p + width + 1];
+						if (u > 0 && J[p + width - 1] > m) m = J[p + width - 1];
+					}
+				}
+				J[p] = m = (m < I[p]) ? m : I[p];
+				if ((u < width - 1 && canPropagate(m, p + 1, J, I)) ||
+					(v < height - 1 && (canPropagate(m, p + width, J, I) ||
+						(connect8 && u < width - 1 && canPropagate(m, p + width + 1, J, I)) ||
+						(connect8 && u > 0 && canPropagate(m, p + width - 1, J, I))))) {
+					queue.add(p);
+				}
+			}
+		}
+		// Step 3: FIFO propagation:
+		while (!queue.isEmpty()) {
+			int p = queue.removeFirst();
+			int u = p % width;
+			int v = p / width;
+			float m = J[p];
+			for (int dv = -1; dv <= 1; dv++) {
+				int vv = v + dv;
+				if (vv < 0 || vv >= height) continue;
+				for (int du = -1; du <= 1; du++) {
+					int uu = u + du;
+					if (uu < 0 || uu >= width || (du == 0 && dv == 0)) continue;
+					if (!connect8 && du != 0 && dv != 0) continue;
+					int q = uu + vv * width;
+					if (canPropagate(m, q, J, I)) {
+						J[q] = (m < I[q]) ? m : I[q];
+						queue.add(q);
+					}
+				}
+			}
+		}
+	}
+
+	// true if value m can still raise pixel q
+	private static boolean canPropagate(float m, int q, float[] J, float[] I) {
+		return J[q] < m && J[q] < I[q];
+	}
+
+	private static boolean isBorder(int u, int v, int w, int h) {
+		return u == 0 || v == 0 || u == w - 1 || v == h - 1;
+	}
+
+	private static void checkSize(ImageProcessor marker, ImageProcessor mask) {
+		if (marker.getWidth() != mask.getWidth() || marker.getHeight() != mask.getHeight())
+			throw new IllegalArgumentException("marker and mask must be of the same size");
+	}
+
+	private static float[] getValues(ImageProcessor ip) {
+		LineMorpher.checkType(ip);
+		float[] values = new float[ip.getPixelCount()];
+		for (int p = 0; p < values.length; p++) {
+			values[p] = ip.getf(p);
+		}
+		return values;
+	}
+
+	private static void setValues(ImageProcessor ip, float[] values) {
+		for (int p = 0; p < values.length; p++) {
+			ip.setf(p, values[p]);
+		}
+	}
+
+	private static void negate(float[] values) {
+		for (int p = 0; p < values.length; p++) {
+			values[p] = -values[p];
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ This software is provided as a supplement to the authors' textbooks on digital
+ image processing published by Springer-Verlag in various languages and editions.
+ Permission to use and distribute this software is granted under the BSD 2-Clause 
+ "Simplified" License (see http://opensource.org/licenses/BSD-2-Clause). 
+ Copyright (c) 2006-2013 Wilhelm Burger, Mark J. Burge. 
+ All rights reserved. Visit http://www.imagingbook.com for additional details.
+ ******************************************************************************/
+
+package imagingbook.pub.morphology;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.Parallel;
+
+/**
+ * Thinning (skeletonization) of binary images by the parallel algorithms of
+ * Zhang/Suen (1984) or Guo/Hall (1989). Every iteration consists of two
+ * subiterations, each of which removes all foreground pixels whose 3x3
+ * neighborhood satisfies the deletion conditions of the algorithm.
+ * The conditions are precomputed for all 256 neighborhood configurations
+ * and stored in a lookup table. Only the current border pixels are examined
+ * (kept in a list, which is updated with the neighbors of deleted pixels),
+ * i.e., the total work is proportional to the image area plus the number of
+ * iterations times the boundary length. The pixels of a subiteration are
+ * examined in parallel (if there are enough of them). Foreground pixels are all pixels with values > 0,
+ * deleted pixels are set to 0.
+ */
+public class Thinning {
+
+	public static enum Method {
+		ZhangSuen, GuoHall;
+	}
+
+	/*
+	 * Neighborhood of pixel P1 (bit i of the LUT index is set if
+	 * neighbor P(i+2) is foreground):
+	 *   P9 P2 P3
+	 *   P8 P1 P4
+	 *   P7 P6 P5
+	 * LUT entries: bit 0 = deletable in subiteration 1, bit 1 = deletable in subiteration 2.
+	 */
+	private static final byte[] lutZhangSuen = makeLut(Method.ZhangSuen);
+	private static final byte[] lutGuoHall = makeLut(Method.GuoHall);
+	
+	// minimum number of list entries per band, shorter lists are processed sequentially:
+	static final int MIN_BAND = 4096;
+
+	// ------- public methods --------------------------
+
+	public static void thin(ByteProcessor ip) {
+		thin(ip, Method.ZhangSuen);
+	}
+
+	/**
+	 * Thins the binary image ip with the specified method.
+	 * @return the number of (complete) iterations performed
+	 */
+	public static int thin(ByteProcessor ip, Method method) {
+		final byte[] lut = (method == Method.GuoHall) ? lutGuoHall : lutZhangSuen;
+		final int w = ip.getWidth();
+		final int h = ip.getHeight();
+		final int W = w + 2;			// width of the padded image
+		final byte[] pixels = (byte[]) ip.getPixels();
+		final byte[] I = new byte[W * (h + 2)];	// padded image (1 = foreground)
+		for (int v = 0; v < h; v++) {
+			for (int u = 0; u < w; u++) {
+				if (pixels[u + v * w] != 0)
+					I[(u + 1) + (v + 1) * W] = 1;
+			}
+		}
+
+		// collect the initial border pixels (foreground with a background neighbor):
+		final boolean[] listed = new boolean[I.length];
+		int[] list = new int[256];
+		int n = 0;
+		for (int v = 1; v <= h; v++) {
+			for (int u = 1; u <= w; u++) {
+				int p = u + v * W;
+				if (I[p] != 0 && getIndex(I, p, W) != 0xFF) {
+					if (n == list.length) list = grow(list);
+					list[n++] = p;
+					listed[p] = true;
+				}
+			}
+		}
+
+		final int[] nbOffsets = {-W, -W + 1, 1, W + 1, W, W - 1, -1, -W - 1};
+		int[] removed = new int[n];
+		boolean[] delete = new boolean[n];
+		int iterations = 0;
+		int unchanged = 0;		// number of consecutive subiterations without deletions
+		for (int sub = 0; unchanged < 2; sub = 1 - sub) {
+			// determine the deletable pixels (in parallel, the image is not modified):
+			if (delete.length < n) {
+				delete = new boolean[list.length];
+				removed = new int[list.length];
+			}
+			final int[] lst = list;
+			final boolean[] del = delete;
+			final int mask = 1 << sub;
+			final int nb = Parallel.getBandCount(n / MIN_BAND, Parallel.getThreadCount());
+			Parallel.forBands(n, nb, new Parallel.BandTask() {
+				public void run(int band, int from, int to) {
+					for (int i = from; i < to; i++) {
+						del[i] = (lut[getIndex(I, lst[i], W)] & mask) != 0;
+					}
+				}
+			});
+			// delete the pixels, the remaining ones stay in the list:
+			int m = 0;
+			int r = 0;
+			for (int i = 0; i < n; i++) {
+				if (del[i])
+					removed[r++] = list[i];
+				else
+					list[m++] = list[i];
+			}
+			for (int i = 0; i < r; i++) {
+				I[removed[i]] = 0;
+				listed[removed[i]] = false;
+			}
+			// the foreground neighbors of deleted pixels are new border pixels:
+			n = m;
+			for (int i = 0; i < r; i++) {
+				for (int d : nbOffsets) {
+					int q = removed[i] + d;
+					if (I[q] != 0 && !listed[q]) {
+						if (n == list.length) list = grow(list);
+						list[n++] = q;
+						listed[q] = true;
+					}
+				}
+			}
+			unchanged = (r == 0) ? unchanged + 1 : 0;
+			if (sub == 1) iterations++;
+		}
+
+		for (int v = 0; v < h; v++) {
+			for (int u = 0; u < w; u++) {
+				if (I[(u + 1) + (v + 1) * W] == 0)
+					pixels[u + v * w] = 0;
+			}
+		}
+		return iterations;
+	}
+
+	// ------- nonpublic methods --------------------------
+
+	// returns the LUT index of the neighborhood of pixel p (image I with width W)
+	private static int getIndex(byte[] I, int p, int W) {
+		return I[p - W] | I[p - W + 1] << 1 | I[p + 1] << 2 | I[p + W + 1] << 3 |
+			   I[p + W] << 4 | I[p + W - 1] << 5 | I[p - 1] << 6 | I[p - W - 1] << 7;
+	}
+
+	private static int[] grow(int[] a) {
+		int[] b = new int[2 * a.length];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static byte[] makeLut(Method method) {
+		byte[] lut = new byte[256];
+		for (int idx = 0; idx < 256; idx++) {
+			boolean[] P = new boolean[10];	// P[2],...,P[9]
+			for (int i = 0; i < 8; i++) {
+				P[i + 2] = (idx & (1 << i)) != 0;
+			}
+			for (int sub = 0; sub < 2; sub++) {
+				boolean deletable = (method == Method.GuoHall) ?
+						isDeletableGuoHall(P, sub) : isDeletableZhangSuen(P, sub);
+				if (deletable)
+					lut[idx] |= 1 << sub;
+			}
+		}
+		return lut;
+	}
+
+	private static boolean isDeletableZhangSuen(boolean[] P, int sub) {
+		int B = 0;	// number of foreground neighbors
+		int A = 0;	// number of 0-1 transitions in the sequence P2,...,P9,P2
+		for (int i = 2; i <= 9; i++) {
+			if (P[i]) B++;
+			if (!P[i] && P[(i < 9) ? i + 1 : 2]) A++;
+		}
+		if (B < 2 || B > 6 || A != 1)
+			return false;
+		if (sub == 0)
+			return !(P[2] && P[4] && P[6]) && !(P[4] && P[6] && P[8]);
+		else
+			return !(P[2] && P[4] && P[8]) && !(P[2] && P[6] && P[8]);
+	}
+
+	private static boolean isDeletableGuoHall(boolean[] P, int sub) {
+		int C = b(!P[2] && (P[3] || P[4])) + b(!P[4] && (P[5] || P[6])) +
+				b(!P[6] && (P[7] || P[8])) + b(!P[8] && (P[9] || P[2]));
+		int N1 = b(P[9] || P[2]) + b(P[3] || P[4]) + b(P[5] || P[6]) + b(P[7] || P[8]);
+		int N2 = b(P[2] || P[3]) + b(P[4] || P[5]) + b(P[6] || P[7]) + b(P[8] || P[9]);
+		int N = Math.min(N1, N2);
+		boolean M = (sub == 0) ?
+				(P[6] || P[7] || !P[9]) && P[8] :
+				(P[2] || P[3] || !P[5]) && P[4];
+		return C == 1 && N >= 2 && N <= 3 && !M;
+	}
+
+	private static int b(boolean x) {
+		return x ? 1 : 0;
+	}
+
+}
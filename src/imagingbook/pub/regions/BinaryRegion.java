@@ -36,10 +36,11 @@ public class BinaryRegion implements Comparable<BinaryRegion> {
 	private List<Contour> innerContours;
 	
 	// auxiliary variables
-	private int x_sum  = 0;
-	private int y_sum  = 0;
-	private int x2_sum = 0;
-	private int y2_sum = 0;
+	private long x_sum  = 0;
+	private long y_sum  = 0;
+	private long x2_sum = 0;
+	private long y2_sum = 0;
+	private long xy_sum = 0;
 	
 	// ------- constructor --------------------------
 
@@ -74,6 +75,35 @@ public class BinaryRegion implements Comparable<BinaryRegion> {
 			return new Point2D.Double(xc, yc);
 	}
 	
+	/* Returns the central moment mu_pq of this region, for moments up to
+	 * order 2 (p + q <= 2), which are derived from the summation variables.
+	 */
+	public double getCentralMoment(int p, int q) {
+		if (p < 0 || q < 0 || p + q > 2)
+			throw new IllegalArgumentException("only moments up to order 2 are available");
+		if (size == 0)
+			return 0;
+		if (p + q == 0)
+			return size;
+		if (p + q == 1)
+			return 0;
+		if (p == 2)
+			return x2_sum - (double) x_sum * x_sum / size;
+		if (q == 2)
+			return y2_sum - (double) y_sum * y_sum / size;
+		return xy_sum - (double) x_sum * y_sum / size;
+	}
+	
+	/* Returns the orientation of the region's major axis (in radians),
+	 * derived from the second order central moments.
+	 */
+	public double getOrientation() {
+		double mu11 = getCentralMoment(1, 1);
+		double mu20 = getCentralMoment(2, 0);
+		double mu02 = getCentralMoment(0, 2);
+		return 0.5 * Math.atan2(2 * mu11, mu20 - mu02);
+	}
+	
 	/* Use this method to add a single pixel to this region. Updates summation
 	 * and boundary variables used to calculate various region statistics.
 	 */
@@ -81,14 +111,56 @@ public class BinaryRegion implements Comparable<BinaryRegion> {
 		size = size + 1;
 		x_sum = x_sum + x;
 		y_sum = y_sum + y;
-		x2_sum = x2_sum + x*x;
-		y2_sum = y2_sum + y*y;
+		x2_sum = x2_sum + (long) x*x;
+		y2_sum = y2_sum + (long) y*y;
+		xy_sum = xy_sum + (long) x*y;
 		if (x<left) left = x;
 		if (y<top)  top = y;
 		if (x>right) right = x;
 		if (y>bottom) bottom = y;
 	}
 	
+	/* Adds the horizontal run of pixels (x0,y),...,(x1,y) to this region,
+	 * with the same effect as adding each pixel individually.
+	 */
+	void addRun(int x0, int x1, int y) {
+		if (x1 < x0) return;
+		int n = x1 - x0 + 1;
+		size = size + n;
+		long sx = (long) (x0 + x1) * n / 2;
+		x_sum = x_sum + sx;
+		y_sum = y_sum + (long) y * n;
+		x2_sum = x2_sum + (sumOfSquares(x1) - sumOfSquares(x0 - 1));
+		y2_sum = y2_sum + (long) y * y * n;
+		xy_sum = xy_sum + y * sx;
+		if (x0<left) left = x0;
+		if (y<top)  top = y;
+		if (x1>right) right = x1;
+		if (y>bottom) bottom = y;
+	}
+	
+	// returns 0^2 + 1^2 + ... + k^2
+	private static long sumOfSquares(int k) {
+		return (long) k * (k + 1) * (2 * k + 1) / 6;
+	}
+	
+	/* Sets the size, bounding box and summation variables of this region
+	 * at once (from statistics accumulated during region labeling).
+	 */
+	void setStatistics(int size, int left, int top, int right, int bottom, 
+			long x_sum, long y_sum, long x2_sum, long y2_sum, long xy_sum) {
+		this.size = size;
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+		this.x_sum = x_sum;
+		this.y_sum = y_sum;
+		this.x2_sum = x2_sum;
+		this.y2_sum = y2_sum;
+		this.xy_sum = xy_sum;
+	}
+	
 	/* Call this method to update the region's statistics. For now only the 
 	 * center coordinates (xc, yc) are updated. Add additional statements as
 	 * needed to update your own region statistics.
@@ -10,19 +10,20 @@
 package imagingbook.pub.regions;
 
 import ij.process.ByteProcessor;
-
-import java.awt.Point;
-import java.util.LinkedList;
-import java.util.Queue;
+import imagingbook.lib.util.IntDeque;
 
 public class BreadthFirstLabeling extends RegionLabeling {
 	
+	private IntDeque queue;	// linear pixel indices (u + v * width), reused for all regions
+	
 	public BreadthFirstLabeling(ByteProcessor ip) {
 		super(ip);
 	}
 	
 	void applyLabeling() {
 		resetLabel();
+		statsCollected = true;	// see floodFill()
+		queue = new IntDeque();
 		for (int v = 0; v < height; v++) {
 			for (int u = 0; u < width; u++) {
 				if (getLabel(u, v) == FOREGROUND) {
@@ -32,22 +33,30 @@ public class BreadthFirstLabeling extends RegionLabeling {
 				}
 			}
 		}
+		queue = null;
 	}
 
+	// Pixels are labeled when they are added to the queue, so every
+	// pixel enters the queue only once and no objects are created.
 	void floodFill(int u, int v, int label) {
-		Queue<Point> queue = new LinkedList<Point>();
-		queue.add(new Point(u, v));
+		queue.clear();
+		visit(u, v, label);
 		while (!queue.isEmpty()) {
-			Point p = queue.remove();	// get the next point to process
-			int up = p.x;
-			int vp = p.y;
-			if ((up>=0) && (up<width) && (vp>=0) && (vp<height) && getLabel(up, vp)==FOREGROUND) {
-				setLabel(up, vp, label);
-				queue.add(new Point(up+1, vp));
-				queue.add(new Point(up, vp+1));
-				queue.add(new Point(up, vp-1));
-				queue.add(new Point(up-1, vp));
-			}
+			int p = queue.removeFirst();	// get the next point to process
+			int up = p % width;
+			int vp = p / width;
+			visit(up+1, vp, label);
+			visit(up, vp+1, label);
+			visit(up, vp-1, label);
+			visit(up-1, vp, label);
+		}
+	}
+	
+	private void visit(int u, int v, int label) {
+		if ((u>=0) && (u<width) && (v>=0) && (v<height) && getLabel(u, v)==FOREGROUND) {
+			setLabel(u, v, label);
+			addToRegion(label, u, v);
+			queue.add(u + v * width);
 		}
 	}
 
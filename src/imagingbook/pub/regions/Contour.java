@@ -14,22 +14,119 @@ import ij.IJ;
 import java.awt.Point;
 import java.awt.geom.Path2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
-public class Contour implements Comparable<Contour> {
+/**
+ * A closed contour, stored compactly as its start point plus an 8-direction
+ * (Freeman) chain code, packed into 3 bits per contour point (21 codes per long).
+ * Point objects are only created on request (by iterating over the contour or
+ * by {@link #getPointList()}), bulk coordinates are available through
+ * {@link #getCoordinates(int[], int[])}.
+ * Contours traced by region labeling are always 8-connected. If a point is 
+ * added which is not an 8-neighbor of the previous point, the contour falls
+ * back to storing explicit point coordinates (see {@link #isChainCoded()}).
+ */
+public class Contour implements Comparable<Contour>, Iterable<Point> {
 	
 	static int INITIAL_SIZE = 50;
 	
+	static final int CODES_PER_WORD = 21;	// 21 x 3 bits per long
+	
+	// Freeman chain code directions (y pointing down):
+	static final int[][] delta = {
+			{ 1,0}, { 1, 1}, {0, 1}, {-1, 1}, 
+			{-1,0}, {-1,-1}, {0,-1}, { 1,-1}};
+	
 	private int label;
-	private List<Point> points;
+	private int length = 0;				// number of contour points
+	private int xStart, yStart;			// first contour point
+	private int xLast, yLast;			// last contour point
+	private long[] codes;				// chain code, code i leads from point i to point i+1
+	private int[] xPoints, yPoints;		// explicit coordinates (null if chain coded)
 	
 	public Contour (int label) {
 		this.label = label;
-		points = new ArrayList<Point>(INITIAL_SIZE);
+		codes = new long[INITIAL_SIZE / CODES_PER_WORD + 1];
 	}
 	
 	public void addPoint (Point p) {
-		points.add(p);
+		addPoint(p.x, p.y);
+	}
+	
+	/**
+	 * Appends point (x, y). If this point is not an 8-neighbor of the 
+	 * previous point, the contour switches to explicit point coordinates.
+	 */
+	public void addPoint (int x, int y) {
+		if (length == 0) {
+			xStart = x;
+			yStart = y;
+		}
+		else if (codes != null) {
+			int c = findChainCode(x - xLast, y - yLast);
+			if (c >= 0)
+				addCode(c);
+			else
+				makePointArrays();
+		}
+		if (xPoints != null) {
+			if (length == xPoints.length) {
+				xPoints = Arrays.copyOf(xPoints, 2 * length);
+				yPoints = Arrays.copyOf(yPoints, 2 * length);
+			}
+			xPoints[length] = x;
+			yPoints[length] = y;
+		}
+		xLast = x;
+		yLast = y;
+		length++;
+	}
+	
+	// replaces the chain code by explicit point coordinates
+	private void makePointArrays() {
+		int n = Math.max(2 * length, INITIAL_SIZE);
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		getCoordinates(xs, ys);
+		xPoints = xs;
+		yPoints = ys;
+		codes = null;
+	}
+	
+	private void addCode(int code) {
+		int i = length - 1;		// index of the new code
+		int k = i / CODES_PER_WORD;
+		if (k == codes.length) {
+			codes = Arrays.copyOf(codes, 2 * codes.length);
+		}
+		codes[k] |= (long) code << (3 * (i % CODES_PER_WORD));
+	}
+	
+	/**
+	 * Returns the Freeman chain code (0,...,7) of the step (dx, dy) between two
+	 * 8-neighbors, with code 0 = (1,0) and codes increasing clockwise (y pointing down).
+	 */
+	public static int getChainCode(int dx, int dy) {
+		int c = findChainCode(dx, dy);
+		if (c < 0)
+			throw new IllegalArgumentException("contour points must be 8-neighbors");
+		return c;
+	}
+	
+	// returns -1 if (dx, dy) is not a step between 8-neighbors
+	private static int findChainCode(int dx, int dy) {
+		for (int c = 0; c < 8; c++) {
+			if (delta[c][0] == dx && delta[c][1] == dy)
+				return c;
+		}
+		return -1;
+	}
+	
+	private int getCode(int i) {
+		return (int) (codes[i / CODES_PER_WORD] >>> (3 * (i % CODES_PER_WORD))) & 0x7;
 	}
 	
 	//--------------------- drawing ------------	
@@ -40,67 +137,143 @@ public class Contour implements Comparable<Contour> {
 	
 	public Path2D makePolygon(double xOffset, double yOffset) {
 		Path2D path = new Path2D.Float();
-		if (points!=null || points.size()>0) {
-			Point[] pnts = points.toArray(new Point[0]);
-			if (pnts.length > 1){
-				path.moveTo(pnts[0].x + xOffset, pnts[0].y + yOffset);
-				for (int i=1; i<pnts.length; i++) {
-					path.lineTo(pnts[i].x + xOffset,  pnts[i].y + yOffset);
+		if (length > 1) {
+			int x = xStart;
+			int y = yStart;
+			path.moveTo(x + xOffset, y + yOffset);
+			for (int i = 0; i < length - 1; i++) {
+				if (codes == null) {
+					x = xPoints[i + 1];
+					y = yPoints[i + 1];
 				}
-				path.closePath();
-			}
-			else {	// mark single pixel region "X"
-				double x = pnts[0].x;
-				double y = pnts[0].y;
-				path.moveTo(x + xOffset - 0.5, y + yOffset - 0.5);
-				path.lineTo(x + xOffset + 0.5, y + yOffset + 0.5);
-				path.moveTo(x + xOffset - 0.5, y + yOffset + 0.5);
-				path.lineTo(x + xOffset + 0.5, y + yOffset - 0.5);
+				else {
+					int c = getCode(i);
+					x = x + delta[c][0];
+					y = y + delta[c][1];
+				}
+				path.lineTo(x + xOffset,  y + yOffset);
 			}
+			path.closePath();
+		}
+		else if (length == 1) {	// mark single pixel region "X"
+			double x = xStart;
+			double y = yStart;
+			path.moveTo(x + xOffset - 0.5, y + yOffset - 0.5);
+			path.lineTo(x + xOffset + 0.5, y + yOffset + 0.5);
+			path.moveTo(x + xOffset - 0.5, y + yOffset + 0.5);
+			path.lineTo(x + xOffset + 0.5, y + yOffset - 0.5);
 		}
 		return path;
 	}
 
 	//--------------------- chain code ------------	
 
-	/*
-	byte[] makeChainCode8() {
-		int m = points.size();
-		if (m>1){
-			int[] xPoints = new int[m];
-			int[] yPoints = new int[m];
-			int k = 0;
-			Iterator<Point> itr = points.iterator();
-			while (itr.hasNext() && k < m) {
-				Point cn = itr.next();
-				xPoints[k] = cn.x;
-				yPoints[k] = cn.y;
-				k = k + 1;
-			}
-			return null;
-		}
-		else {	// use circles for isolated pixels
-			//Point cn = 
-				points.get(0);
-			return null;
+	/**
+	 * Returns true if this contour is stored as a chain code, i.e., if all
+	 * successive points are 8-neighbors.
+	 */
+	public boolean isChainCoded() {
+		return codes != null;
+	}
+	
+	/**
+	 * Returns the 8-direction chain code of this contour (one code less than
+	 * the number of contour points, the closing step is not included).
+	 * Throws an IllegalStateException if the contour is not chain coded
+	 * (see {@link #isChainCoded()}).
+	 */
+	public byte[] getChainCode() {
+		if (codes == null)
+			throw new IllegalStateException("contour points are not 8-connected");
+		byte[] cc = new byte[Math.max(0, length - 1)];
+		for (int i = 0; i < cc.length; i++) {
+			cc[i] = (byte) getCode(i);
 		}
+		return cc;
 	}
-	*/
 	
 	//--------------------- retrieve contour points -------
 	
+	public Point getStartPoint() {
+		return (length == 0) ? null : new Point(xStart, yStart);
+	}
+	
+	/**
+	 * Copies the contour coordinates to the given arrays, which must have
+	 * (at least) {@link #getLength()} elements.
+	 */
+	public void getCoordinates(int[] xs, int[] ys) {
+		if (length == 0) return;
+		if (codes == null) {
+			System.arraycopy(xPoints, 0, xs, 0, length);
+			System.arraycopy(yPoints, 0, ys, 0, length);
+			return;
+		}
+		int x = xStart;
+		int y = yStart;
+		xs[0] = x;
+		ys[0] = y;
+		for (int i = 1; i < length; i++) {
+			int c = getCode(i - 1);
+			x = x + delta[c][0];
+			y = y + delta[c][1];
+			xs[i] = x;
+			ys[i] = y;
+		}
+	}
+	
 	public List<Point> getPointList() {
+		List<Point> points = new ArrayList<Point>(length);
+		for (Point p : this) {
+			points.add(p);
+		}
 		return points;
 	}
 	
 	public Point[] getPointArray() {
-		return points.toArray(new Point[0]);
+		return getPointList().toArray(new Point[0]);
+	}
+	
+	/**
+	 * Returns an iterator over the contour points (a new Point is created
+	 * for each point).
+	 */
+	public Iterator<Point> iterator() {
+		return new Iterator<Point>() {
+			int i = 0;
+			int x = xStart;
+			int y = yStart;
+			
+			public boolean hasNext() {
+				return i < length;
+			}
+			
+			public Point next() {
+				if (i >= length) 
+					throw new NoSuchElementException();
+				if (codes == null) {
+					x = xPoints[i];
+					y = yPoints[i];
+				}
+				else if (i > 0) {
+					int c = getCode(i - 1);
+					x = x + delta[c][0];
+					y = y + delta[c][1];
+				}
+				i++;
+				return new Point(x, y);
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 		
 	//--------------------- contour statistics ------------
 	
 	public int getLength() {
-		return points.size();
+		return length;
 	}
 	
 	public int getLabel() {
@@ -110,7 +283,7 @@ public class Contour implements Comparable<Contour> {
 	//--------------------- debug methods ------------------
 	
 	public void printPoints (){
-		for (Point pt: points) {
+		for (Point pt: this) {
 			IJ.log(pt.toString());
 		}
 	}
@@ -124,7 +297,7 @@ public class Contour implements Comparable<Contour> {
 	
 	// Compare method for sorting ontours by length (longer contours at front)
 	public int compareTo(Contour c2) {
-		return c2.points.size() - this.points.size();
+		return c2.length - this.length;
 	}
 
 }
@@ -10,18 +10,20 @@
 package imagingbook.pub.regions;
 
 import ij.process.ByteProcessor;
-
-import java.awt.Point;
-import java.util.Stack;
+import imagingbook.lib.util.IntDeque;
 
 public class DepthFirstLabeling extends RegionLabeling {
 	
+	private IntDeque stack;	// linear pixel indices (u + v * width), reused for all regions
+	
 	public DepthFirstLabeling(ByteProcessor ip) {
 		super(ip);
 	}
 	
 	void applyLabeling() {
 		resetLabel();
+		statsCollected = true;	// see floodFill()
+		stack = new IntDeque();
 		for (int v = 0; v < height; v++) {
 			for (int u = 0; u < width; u++) {
 				if (getLabel(u, v) == FOREGROUND) {
@@ -31,23 +33,31 @@ public class DepthFirstLabeling extends RegionLabeling {
 				}
 			}
 		}
+		stack = null;
 	}
 
+	// Pixels are labeled when they are pushed onto the stack, so every
+	// pixel is pushed only once and no objects are created.
 	void floodFill(int x, int y, int label) {
-		//stack contains pixel coordinates
-		Stack<Point> stack = new Stack<Point>();	// Note: Stack should be replaced by Deque interface (Java 1.6)
-		stack.push(new Point(x,y));
+		//stack contains linear pixel indices
+		stack.clear();
+		visit(x, y, label);
 		while (!stack.isEmpty()){
-			Point p = stack.pop();
-			int up = p.x;
-			int vp = p.y;
-			if ((up>=0) && (up<width) && (vp>=0) && (vp<height) && getLabel(up, vp)==FOREGROUND) {
-				setLabel(up, vp, label);
-				stack.push(new Point(up+1, vp));
-				stack.push(new Point(up, vp+1));
-				stack.push(new Point(up, vp-1));
-				stack.push(new Point(up-1, vp));
-			}
+			int p = stack.removeLast();
+			int up = p % width;
+			int vp = p / width;
+			visit(up+1, vp, label);
+			visit(up, vp+1, label);
+			visit(up, vp-1, label);
+			visit(up-1, vp, label);
+		}
+	}
+	
+	private void visit(int u, int v, int label) {
+		if ((u>=0) && (u<width) && (v>=0) && (v<height) && getLabel(u, v)==FOREGROUND) {
+			setLabel(u, v, label);
+			addToRegion(label, u, v);
+			stack.add(u + v * width);
 		}
 	}
 
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This source code is made available as supplement to the printed textbooks on 
+ * 'Digital Image Processing', authored by Wilhelm Burger and Mark J. Burge and 
+ * published by Springer-Verlag. Note that this code comes with absolutely no 
+ * warranty of any kind and the authors reserve the right to make changes to 
+ * the code without notice at any time. See http://www.imagingbook.com for 
+ * details and licensing conditions. Last update: 2013.
+ ******************************************************************************/
+
+package imagingbook.pub.regions;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.Parallel;
+import imagingbook.lib.util.UnionFind;
+
+/**
+ * Parallel version of the sequential (8-connected) region labeling.
+ * The image is split into horizontal strips which are labeled concurrently,
+ * each strip using its own range of provisional labels and its own (growable)
+ * union-find structure. The strips' structures are then combined into a single
+ * one, sized by the number of labels actually used, equivalences across the
+ * seams between strips are merged, and the image is finally relabeled (again
+ * in parallel) with consecutive labels, in the raster order in which the
+ * regions are first encountered. The region statistics are collected per
+ * strip during relabeling and merged afterwards.
+ * The results are the same as with {@link SequentialLabeling}.
+ */
+public class ParallelLabeling extends RegionLabeling {
+
+	public ParallelLabeling(ByteProcessor ip) {
+		super(ip);
+	}
+
+	void applyLabeling() {
+		resetLabel();
+		// a row contains at most (width + 1) / 2 starting points of new labels:
+		final int maxLabelsPerRow = (width + 1) / 2;
+		final int nb = Parallel.getBandCount(height, Parallel.getThreadCount());
+		final int[] stripStart = new int[nb + 1];	// first row of each strip
+		final UnionFind[] stripUf = new UnionFind[nb];	// union-find structure of each strip
+
+		// Step 1: label all strips independently:
+		Parallel.forBands(height, nb, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				stripStart[band] = from;
+				stripUf[band] = new UnionFind();
+				labelStrip(from, to, START_LABEL + from * maxLabelsPerRow, stripUf[band]);
+			}
+		});
+		stripStart[nb] = height;
+
+		// Step 2: combine the union-find structures, provisional label a of strip b
+		// becomes element offset[b] + a - base[b]:
+		final int[] base = new int[nb];
+		final int[] offset = new int[nb + 1];
+		for (int b = 0; b < nb; b++) {
+			base[b] = START_LABEL + stripStart[b] * maxLabelsPerRow;
+			offset[b + 1] = offset[b] + stripUf[b].size();
+		}
+		UnionFind uf = new UnionFind(offset[nb]);
+		for (int b = 0; b < nb; b++) {
+			for (int k = 0; k < stripUf[b].size(); k++) {
+				int root = stripUf[b].find(k);
+				if (root != k)
+					uf.link(offset[b] + root, offset[b] + k);
+			}
+			stripUf[b] = null;
+		}
+
+		// Step 3: merge equivalences across the seams between strips:
+		for (int b = 1; b < nb; b++) {
+			int v = stripStart[b];
+			for (int u = 0; u < width; u++) {
+				int a = getLabel(u, v);
+				if (a >= START_LABEL) {
+					for (int du = -1; du <= 1; du++) {
+						int n = getLabel(u + du, v - 1);
+						if (n >= START_LABEL)
+							uf.union(offset[b] + a - base[b], offset[b - 1] + n - base[b - 1]);
+					}
+				}
+			}
+		}
+
+		// Step 4: assign consecutive labels (increasing elements follow
+		// the raster order, each root is the smallest element of its set):
+		final int[] replacementTable = new int[offset[nb]];
+		for (int k = 0; k < replacementTable.length; k++) {
+			int root = uf.find(k);
+			replacementTable[k] = (root == k) ? getNextLabel() : replacementTable[root];
+		}
+
+		// Step 5: relabel the image and collect the statistics of the 
+		// provisional labels of each strip:
+		final StripStatistics[] stripStats = new StripStatistics[nb];
+		Parallel.forBands(height, nb, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				final int d = offset[band] - base[band];
+				final StripStatistics stats = new StripStatistics(offset[band + 1] - offset[band]);
+				for (int v = from; v < to; v++) {
+					for (int u = 0; u < width; u++) {
+						int a = labelArray[u + v * width];
+						if (a >= START_LABEL) {
+							labelArray[u + v * width] = replacementTable[a + d];
+							stats.add(a - base[band], u, v);
+						}
+					}
+				}
+				stripStats[band] = stats;
+			}
+		});
+		
+		// Step 6: merge the statistics into the final regions:
+		for (int b = 0; b < nb; b++) {
+			StripStatistics s = stripStats[b];
+			for (int k = 0; k < s.size.length; k++) {
+				if (s.size[k] > 0) {
+					addToRegion(replacementTable[offset[b] + k], s.size[k], s.left[k], s.top[k], 
+						s.right[k], s.bottom[k], s.sumX[k], s.sumY[k], s.sumXX[k], s.sumYY[k], s.sumXY[k]);
+				}
+			}
+			stripStats[b] = null;
+		}
+		statsCollected = true;
+	}
+
+	// labels the rows from,...,to-1 (sequential labeling), label firstLabel + k
+	// is element k of the union-find structure uf
+	void labelStrip(int from, int to, int firstLabel, UnionFind uf) {
+		for (int v = from; v < to; v++) {
+			for (int u = 0; u < width; u++) {
+				if (labelArray[u + v * width] != FOREGROUND)
+					continue;
+				// neighborhood: [1][2][3]
+				//               [0][x]
+				// (neighbors outside the strip are ignored)
+				int n0 = (u > 0) ? labelArray[u-1 + v * width] : BACKGROUND;
+				int n1 = (u > 0 && v > from) ? labelArray[u-1 + (v-1) * width] : BACKGROUND;
+				int n2 = (v > from) ? labelArray[u + (v-1) * width] : BACKGROUND;
+				int n3 = (u < width-1 && v > from) ? labelArray[u+1 + (v-1) * width] : BACKGROUND;
+				int label = Integer.MAX_VALUE;
+				if (n0 >= START_LABEL && n0 < label) label = n0;
+				if (n1 >= START_LABEL && n1 < label) label = n1;
+				if (n2 >= START_LABEL && n2 < label) label = n2;
+				if (n3 >= START_LABEL && n3 < label) label = n3;
+				if (label == Integer.MAX_VALUE) {	// all neighbors are background, assign a new label
+					label = firstLabel + uf.add();
+				}
+				else {	// register label equivalences
+					if (n0 >= START_LABEL && n0 != label) uf.union(n0 - firstLabel, label - firstLabel);
+					if (n1 >= START_LABEL && n1 != label) uf.union(n1 - firstLabel, label - firstLabel);
+					if (n2 >= START_LABEL && n2 != label) uf.union(n2 - firstLabel, label - firstLabel);
+					if (n3 >= START_LABEL && n3 != label) uf.union(n3 - firstLabel, label - firstLabel);
+				}
+				labelArray[u + v * width] = label;
+			}
+		}
+	}
+
+	/**
+	 * Region statistics of the provisional labels 0,...,n-1 of a single strip.
+	 */
+	static class StripStatistics {
+		final int[] size, left, top, right, bottom;
+		final long[] sumX, sumY, sumXX, sumYY, sumXY;
+
+		StripStatistics(int n) {
+			size = new int[n];
+			left = new int[n];
+			top = new int[n];
+			right = new int[n];
+			bottom = new int[n];
+			sumX = new long[n];
+			sumY = new long[n];
+			sumXX = new long[n];
+			sumYY = new long[n];
+			sumXY = new long[n];
+		}
+
+		// adds pixel (u,v) to provisional label k, rows are added top to bottom
+		void add(int k, int u, int v) {
+			if (size[k] == 0) {
+				left[k] = right[k] = u;
+				top[k] = v;
+			}
+			else {
+				if (u < left[k]) left[k] = u;
+				if (u > right[k]) right[k] = u;
+			}
+			bottom[k] = v;
+			size[k]++;
+			sumX[k] += u;
+			sumY[k] += v;
+			sumXX[k] += (long) u * u;
+			sumYY[k] += (long) v * v;
+			sumXY[k] += (long) u * v;
+		}
+	}
+
+}
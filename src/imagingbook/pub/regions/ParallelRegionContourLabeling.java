@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * This source code is made available as supplement to the printed textbooks on 
+ * 'Digital Image Processing', authored by Wilhelm Burger and Mark J. Burge and 
+ * published by Springer-Verlag. Note that this code comes with absolutely no 
+ * warranty of any kind and the authors reserve the right to make changes to 
+ * the code without notice at any time. See http://www.imagingbook.com for 
+ * details and licensing conditions. Last update: 2013.
+ ******************************************************************************/
+
+package imagingbook.pub.regions;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.IntDeque;
+import imagingbook.lib.util.Parallel;
+
+import java.util.Arrays;
+
+/**
+ * Parallel version of {@link RegionContourLabeling}. The regions are labeled
+ * first (using {@link ParallelLabeling}), then the seed points of all contours 
+ * are collected: the first pixel of each region (in raster order) for the
+ * outer contours and the first pixel of each hole (4-connected background 
+ * component not connected to the image border) for the inner contours.
+ * Finally, all contours are traced in parallel. Labels, contours and their 
+ * order (in the lists returned by {@link #getAllOuterContours(boolean)} and
+ * {@link #getAllInnerContours(boolean)}) are the same as with 
+ * {@link RegionContourLabeling}.
+ */
+public class ParallelRegionContourLabeling extends RegionContourLabeling {
+	
+	// Note: fields must not be initialized here, since applyLabeling() is
+	// called from the super-class constructor.
+	private RegionLabeling labeling;
+	
+	public ParallelRegionContourLabeling(ByteProcessor ip) {
+		super(ip);
+	}
+	
+	void applyLabeling() {
+		resetLabel();
+		labeling = new ParallelLabeling((ByteProcessor) ip);
+		maxLabel = currentLabel = labeling.getMaxLabel();
+		
+		// copy the labels and collect the start points of the outer contours:
+		final int[] outerSeeds = new int[Math.max(0, maxLabel + 1)];	// u + v * width
+		Arrays.fill(outerSeeds, -1);
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				int label = labeling.getLabel(u, v);
+				if (label >= START_LABEL) {
+					setLabel(u, v, label);
+					if (outerSeeds[label] < 0) {
+						outerSeeds[label] = u + v * width;
+					}
+				}
+			}
+		}
+		final int[] innerSeeds = findHoles();
+		
+		// trace all contours in parallel:
+		final Contour[] outer = new Contour[outerSeeds.length];
+		Parallel.forBands(outerSeeds.length, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int label = Math.max(from, START_LABEL); label < to; label++) {
+					int p = outerSeeds[label];
+					if (p >= 0) {
+						outer[label] = traceContour(p % width, p / width, 0, label);
+					}
+				}
+			}
+		});
+		final Contour[] inner = new Contour[innerSeeds.length];
+		Parallel.forBands(innerSeeds.length, new Parallel.BandTask() {
+			public void run(int band, int from, int to) {
+				for (int i = from; i < to; i++) {
+					int u = innerSeeds[i] % width;
+					int v = innerSeeds[i] / width;
+					// the hole's left neighbor belongs to the enclosing region:
+					inner[i] = traceContour(u - 1, v, 1, labeling.getLabel(u - 1, v));
+				}
+			}
+		});
+		for (Contour c : outer) {
+			if (c != null) outerContours.add(c);
+		}
+		for (Contour c : inner) {
+			innerContours.add(c);
+		}
+	}
+	
+	/*
+	 * Returns the first pixel (u + v * width, in raster order) of every
+	 * hole. Background pixels are 4-connected, starting from the (padded) 
+	 * image border all background pixels outside of any region are marked 
+	 * first, the remaining background pixels belong to holes.
+	 */
+	private int[] findHoles() {
+		final int wp = width + 2;	// padded image size
+		final int hp = height + 2;
+		final byte[] marked = new byte[wp * hp];
+		IntDeque stack = new IntDeque();
+		fillBackground(0, marked, stack);
+		IntDeque seeds = new IntDeque();
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				int p = (u + 1) + (v + 1) * wp;
+				if (marked[p] == 0 && getLabel(u, v) == BACKGROUND) {
+					seeds.add(u + v * width);
+					fillBackground(p, marked, stack);
+				}
+			}
+		}
+		int[] result = new int[seeds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = seeds.removeFirst();
+		}
+		return result;
+	}
+	
+	// marks the 4-connected background component containing the padded position p
+	private void fillBackground(int p, byte[] marked, IntDeque stack) {
+		final int wp = width + 2;
+		final int hp = height + 2;
+		stack.clear();
+		marked[p] = 1;
+		stack.add(p);
+		while (!stack.isEmpty()) {
+			int q = stack.removeLast();
+			int x = q % wp;
+			int y = q / wp;
+			if (x > 0)      visitBackground(q - 1, marked, stack);
+			if (x < wp - 1) visitBackground(q + 1, marked, stack);
+			if (y > 0)      visitBackground(q - wp, marked, stack);
+			if (y < hp - 1) visitBackground(q + wp, marked, stack);
+		}
+	}
+	
+	private void visitBackground(int q, byte[] marked, IntDeque stack) {
+		if (marked[q] == 0 && labelArray[q] == BACKGROUND) {
+			marked[q] = 1;
+			stack.add(q);
+		}
+	}
+	
+	void collectRegions() {
+		// the regions (and their statistics) are taken from the labeling
+		regions = labeling.regions;
+		regionArray = labeling.regionArray;
+		labeling = null;
+		attachOuterContours();
+		attachInnerContours();
+	}
+	
+}
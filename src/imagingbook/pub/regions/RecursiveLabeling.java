@@ -11,6 +11,13 @@ package imagingbook.pub.regions;
 
 import ij.process.ByteProcessor;
 
+/**
+ * Region labeling by recursive flood filling. Note that the recursion depth
+ * grows with the region size, which may exhaust the stack memory of the
+ * calling thread for large regions. This implementation is for demonstration 
+ * only, use {@link BreadthFirstLabeling}, {@link DepthFirstLabeling} or
+ * {@link ScanlineLabeling} instead.
+ */
 public class RecursiveLabeling extends RegionLabeling {
 
 	public RecursiveLabeling(ByteProcessor ip) {
@@ -19,9 +26,10 @@ public class RecursiveLabeling extends RegionLabeling {
 	
 	void applyLabeling() {
 		resetLabel();
+		statsCollected = true;	// see floodFill()
 		for (int v = 0; v < height; v++) {
 			for (int u = 0; u < width; u++) {
-				if (getLabel(u, v) >= START_LABEL) {
+				if (getLabel(u, v) == FOREGROUND) {
 					// start a new region
 					int label = getNextLabel();
 					floodFill(u, v, label);
@@ -31,8 +39,9 @@ public class RecursiveLabeling extends RegionLabeling {
 	}
 
 	public void floodFill(int up, int vp, int label) {
-		if ((up>=0) && (up<width) && (vp>=0) && (vp<height) && getLabel(up, vp)>=START_LABEL) {
+		if ((up>=0) && (up<width) && (vp>=0) && (vp<height) && getLabel(up, vp)==FOREGROUND) {
 			setLabel(up, vp, label);
+			addToRegion(label, up, vp);
 			floodFill(up + 1, vp, label);
 			floodFill(up, vp + 1, label);
 			floodFill(up, vp - 1, label);
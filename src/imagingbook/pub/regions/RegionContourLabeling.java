@@ -28,8 +28,8 @@ public class RegionContourLabeling extends RegionLabeling {
 	
 	static final int VISITED = -1;
 	
-	private List<Contour> outerContours;
-	private List<Contour> innerContours;
+	List<Contour> outerContours;
+	List<Contour> innerContours;
 	
 	// constructors
 	
@@ -60,7 +60,7 @@ public class RegionContourLabeling extends RegionLabeling {
 	void initialize() {
 		// Create a label array which is "padded" by 1 pixel, i.e., 
 		// 2 rows and 2 columns larger than the image:
-		labelArray = new int[width+2][height+2];	// initialized to zero
+		labelArray = new int[(width+2) * (height+2)];	// initialized to zero
 		outerContours = new ArrayList<Contour>();
 		innerContours = new ArrayList<Contour>();
 	}
@@ -106,9 +106,9 @@ public class RegionContourLabeling extends RegionLabeling {
 		int xT, yT; // T = successor of starting point (xS,yS)
 		int xP, yP; // P = previous contour point
 		int xC, yC; // C = current contour point
-		Point pt = new Point(xS, yS); 
+		Point pt = new Point(xS, yS); 	// reused for all contour points
 		int dNext = findNextPoint(pt, dS);
-		contr.addPoint(pt); 
+		contr.addPoint(pt.x, pt.y); 
 		xP = xS; yP = yS;
 		xC = xT = pt.x;
 		yC = yT = pt.y;
@@ -116,7 +116,7 @@ public class RegionContourLabeling extends RegionLabeling {
 		boolean done = (xS==xT && yS==yT);  // true if isolated pixel
 		while (!done) {
 			setLabel(xC, yC, label);
-			pt = new Point(xC, yC);
+			pt.x = xC; pt.y = yC;
 			int dSearch = (dNext + 6) % 8;
 			dNext = findNextPoint(pt, dSearch);
 			xP = xC;  yP = yC;	
@@ -124,15 +124,13 @@ public class RegionContourLabeling extends RegionLabeling {
 			// are we back at the starting position?
 			done = (xP==xS && yP==yS && xC==xT && yC==yT);
 			if (!done) {
-				contr.addPoint(pt);
+				contr.addPoint(xC, yC);
 			}
 		}
 		return contr;
 	}
 	
-	static final int[][] delta = {
-			{ 1,0}, { 1, 1}, {0, 1}, {-1, 1}, 
-			{-1,0}, {-1,-1}, {0,-1}, { 1,-1}};
+	static final int[][] delta = Contour.delta;	// Freeman chain code directions
 	
 	int findNextPoint (Point pt, int dir) { 
 		// Starts at Point pt in direction dir,
@@ -188,11 +186,11 @@ public class RegionContourLabeling extends RegionLabeling {
 
 	// access methods to the label array (which is padded!)
 	public int getLabel(int u, int v) {	// (u,v) are image coordinates
-		return labelArray[u+1][v+1];	// label array is padded (offset = 1)
+		return labelArray[(u+1) + (v+1) * (width+2)];	// label array is padded (offset = 1)
 	}
 	
 	void setLabel(int u, int v, int label) { // (u,v) are image coordinates
-		labelArray[u+1][v+1] = label;
+		labelArray[(u+1) + (v+1) * (width+2)] = label;
 	}
 	
 	private List<Contour> copyContours(List<Contour> cntrs, boolean sorted) {
@@ -17,8 +17,8 @@ import ij.process.ShortProcessor;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -40,13 +40,22 @@ public abstract class RegionLabeling {
 	protected int currentLabel;
 	protected int maxLabel;	// the maximum label in the labels array
 	
-	protected int[][] labelArray;
+	protected int[] labelArray;	// row-major, label of (u,v) is at labelArray[u + v * width]
 	// label values in labelArray can be:
 	//  0 ... unlabeled
 	// -1 ... previously visited background pixel
 	// >0 ... valid label
 	
 	protected List<BinaryRegion> regions;
+	protected BinaryRegion[] regionArray;	// regionArray[label] (null if unused)
+	
+	// Region statistics, indexed by label. Sub-classes which know the final
+	// label of each pixel during labeling add the pixels with addToRegion()
+	// and set statsCollected = true, otherwise collectRegions() takes care of it.
+	boolean statsCollected = false;
+	private int[] regSize = new int[0];
+	private int[] regLeft, regTop, regRight, regBottom;
+	private long[] regSumX, regSumY, regSumXX, regSumYY, regSumXY;
 	
 	RegionLabeling(ByteProcessor ip) {
 		this.ip = ip;
@@ -59,10 +68,10 @@ public abstract class RegionLabeling {
 	
 	void initialize() {
 		// set all pixels to either FOREGROUND or BACKGROUND (by thresholding)
-		labelArray = new int[width][height];
+		labelArray = new int[width * height];
 		for (int v = 0; v < height; v++) {
 			for (int u = 0; u < width; u++) {
-				labelArray[u][v] = (ip.getPixel(u, v) > 0) ? FOREGROUND : BACKGROUND;
+				labelArray[u + v * width] = (ip.getPixel(u, v) > 0) ? FOREGROUND : BACKGROUND;
 			}
 		}
 	}
@@ -87,42 +96,110 @@ public abstract class RegionLabeling {
 	abstract void applyLabeling();
 	
 	// creates a container of BinaryRegion objects
-	// collects the region pixels from the label image
-	// and computes the statistics for each region
+	// from the region statistics collected for each label
 	void collectRegions() {
-		BinaryRegion[] regionArray = new BinaryRegion[maxLabel + 1];
-		for (int i = START_LABEL; i <= maxLabel; i++) {
-			regionArray[i] = new BinaryRegion(i);
-		}
-		for (int v = 0; v < height; v++) {
-			for (int u = 0; u < width; u++) {
-				int label = getLabel(u, v);
-				if (label >= START_LABEL && label <= maxLabel && regionArray[label] != null) {
-					regionArray[label].addPixel(u, v);
+		if (!statsCollected) {	// one pass over the label array
+			for (int v = 0; v < height; v++) {
+				for (int u = 0; u < width; u++) {
+					int label = getLabel(u, v);
+					if (label >= START_LABEL && label <= maxLabel) {
+						addToRegion(label, u, v);
+					}
 				}
 			}
 		}
+		regionArray = new BinaryRegion[maxLabel + 1];
 		// create a list of regions to return, collect nonempty regions
-		List<BinaryRegion> regionList = new LinkedList<BinaryRegion>();
-		for (BinaryRegion r: regionArray) {
-			if (r != null && r.getSize() > 0) {
+		List<BinaryRegion> regionList = new ArrayList<BinaryRegion>();
+		for (int i = START_LABEL; i <= maxLabel && i < regSize.length; i++) {
+			if (regSize[i] > 0) {
+				BinaryRegion r = new BinaryRegion(i);
+				r.setStatistics(regSize[i], regLeft[i], regTop[i], regRight[i], regBottom[i], 
+						regSumX[i], regSumY[i], regSumXX[i], regSumYY[i], regSumXY[i]);
 				r.update();	// compute the statistics for this region
+				regionArray[i] = r;
 				regionList.add(r);
 			}
 		}
 		regions = regionList;
+		regSize = new int[0];	// statistics are not needed any longer
+		regLeft = regTop = regRight = regBottom = null;
+		regSumX = regSumY = regSumXX = regSumYY = regSumXY = null;
+	}
+	
+	// adds pixel (u,v) to the statistics of the region with the given label
+	void addToRegion(int label, int u, int v) {
+		if (label >= regSize.length) {
+			growRegionStatistics(Math.max(2 * regSize.length, label + 1));
+		}
+		if (regSize[label] == 0) {
+			regLeft[label] = regRight[label] = u;
+			regTop[label] = regBottom[label] = v;
+		}
+		else {
+			if (u < regLeft[label]) regLeft[label] = u;
+			if (u > regRight[label]) regRight[label] = u;
+			if (v < regTop[label]) regTop[label] = v;
+			if (v > regBottom[label]) regBottom[label] = v;
+		}
+		regSize[label]++;
+		regSumX[label] += u;
+		regSumY[label] += v;
+		regSumXX[label] += (long) u * u;
+		regSumYY[label] += (long) v * v;
+		regSumXY[label] += (long) u * v;
+	}
+	
+	// adds the statistics of a partial region (e.g., collected for a part 
+	// of the image) to the statistics of the region with the given label
+	void addToRegion(int label, int size, int left, int top, int right, int bottom, 
+			long sumX, long sumY, long sumXX, long sumYY, long sumXY) {
+		if (label >= regSize.length) {
+			growRegionStatistics(Math.max(2 * regSize.length, label + 1));
+		}
+		if (regSize[label] == 0) {
+			regLeft[label] = left;
+			regRight[label] = right;
+			regTop[label] = top;
+			regBottom[label] = bottom;
+		}
+		else {
+			if (left < regLeft[label]) regLeft[label] = left;
+			if (right > regRight[label]) regRight[label] = right;
+			if (top < regTop[label]) regTop[label] = top;
+			if (bottom > regBottom[label]) regBottom[label] = bottom;
+		}
+		regSize[label] += size;
+		regSumX[label] += sumX;
+		regSumY[label] += sumY;
+		regSumXX[label] += sumXX;
+		regSumYY[label] += sumYY;
+		regSumXY[label] += sumXY;
+	}
+	
+	private void growRegionStatistics(int n) {
+		regSize   = Arrays.copyOf(regSize, n);
+		regLeft   = (regLeft == null) ? new int[n] : Arrays.copyOf(regLeft, n);
+		regTop    = (regTop == null) ? new int[n] : Arrays.copyOf(regTop, n);
+		regRight  = (regRight == null) ? new int[n] : Arrays.copyOf(regRight, n);
+		regBottom = (regBottom == null) ? new int[n] : Arrays.copyOf(regBottom, n);
+		regSumX   = (regSumX == null) ? new long[n] : Arrays.copyOf(regSumX, n);
+		regSumY   = (regSumY == null) ? new long[n] : Arrays.copyOf(regSumY, n);
+		regSumXX  = (regSumXX == null) ? new long[n] : Arrays.copyOf(regSumXX, n);
+		regSumYY  = (regSumYY == null) ? new long[n] : Arrays.copyOf(regSumYY, n);
+		regSumXY  = (regSumXY == null) ? new long[n] : Arrays.copyOf(regSumXY, n);
 	}
 	
 	public int getLabel(int u, int v) {
 		if (u >= 0 && u < width && v >= 0 && v < height)
-			return labelArray[u][v];
+			return labelArray[u + v * width];
 		else
 			return BACKGROUND;
 	}
 	
 	void setLabel(int u, int v, int label) {
 		if (u >= 0 && u < width && v >= 0 && v < height)
-			labelArray[u][v] = label;
+			labelArray[u + v * width] = label;
 	}
 	
 	void resetLabel() {
@@ -180,15 +257,9 @@ public abstract class RegionLabeling {
 	
 	// Find the region object with the given label:
 	public BinaryRegion findRegion(int label) {
-		if (regions == null) return null;
-		BinaryRegion regn = null;
-		for (BinaryRegion r : regions) {
-			if (r.getLabel() == label) {
-				regn = r;
-				break;
-			}
-		}
-		return regn;
+		if (regionArray == null || label < 0 || label >= regionArray.length) 
+			return null;
+		return regionArray[label];
 	}
 	
 	
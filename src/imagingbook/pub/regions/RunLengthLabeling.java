@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This source code is made available as supplement to the printed textbooks on 
+ * 'Digital Image Processing', authored by Wilhelm Burger and Mark J. Burge and 
+ * published by Springer-Verlag. Note that this code comes with absolutely no 
+ * warranty of any kind and the authors reserve the right to make changes to 
+ * the code without notice at any time. See http://www.imagingbook.com for 
+ * details and licensing conditions. Last update: 2013.
+ ******************************************************************************/
+
+package imagingbook.pub.regions;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.UnionFind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Run-based region labeling. Every image row is encoded as a sequence of
+ * foreground runs, and overlapping runs in adjacent rows are merged in a
+ * union-find structure. No label array is created, i.e., memory and time
+ * (after the initial scan of the image) depend on the number of runs only,
+ * which is much smaller than the number of pixels for typical binary images
+ * (e.g., document scans or sparse masks). Region statistics are computed
+ * directly from the runs. Regions are 8-connected by default.
+ */
+public class RunLengthLabeling {
+
+	static final int BACKGROUND = RegionLabeling.BACKGROUND;
+	static final int START_LABEL = RegionLabeling.START_LABEL;
+
+	private final int width;
+	private final int height;
+	private final boolean connect8;
+
+	private int runCount = 0;
+	private int[] runStart = new int[256];	// first pixel of run i (u)
+	private int[] runEnd = new int[256];	// last pixel of run i + 1 (exclusive)
+	private int[] runLabel;					// region label of run i
+	private final int[] rowStart;			// runs in row v are rowStart[v],...,rowStart[v+1]-1
+
+	private final BinaryRegion[] regionArray;	// regionArray[label - START_LABEL]
+
+	public RunLengthLabeling(ByteProcessor ip) {
+		this(ip, true);
+	}
+
+	/**
+	 * @param ip binary image (foreground pixels > 0)
+	 * @param connect8 true for 8-connected, false for 4-connected regions
+	 */
+	public RunLengthLabeling(ByteProcessor ip, boolean connect8) {
+		this.width = ip.getWidth();
+		this.height = ip.getHeight();
+		this.connect8 = connect8;
+		this.rowStart = new int[height + 1];
+		collectRuns(ip);
+		this.regionArray = labelRuns();
+	}
+
+	// ------- public methods --------------------------
+
+	public List<BinaryRegion> getRegions() {
+		return getRegions(false);	// unsorted
+	}
+
+	public List<BinaryRegion> getRegions(boolean sort) {
+		List<BinaryRegion> rns = new ArrayList<BinaryRegion>(Arrays.asList(regionArray));
+		if (sort) {
+			Collections.sort(rns);
+		}
+		return rns;
+	}
+
+	// Find the region object with the given label:
+	public BinaryRegion findRegion(int label) {
+		int i = label - START_LABEL;
+		return (i >= 0 && i < regionArray.length) ? regionArray[i] : null;
+	}
+
+	/**
+	 * Returns the label of pixel (u,v), found by binary search in the runs of row v
+	 * (0 for background pixels or outside the image).
+	 */
+	public int getLabel(int u, int v) {
+		if (v < 0 || v >= height)
+			return BACKGROUND;
+		int lo = rowStart[v];
+		int hi = rowStart[v + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (u < runStart[mid])
+				hi = mid - 1;
+			else if (u >= runEnd[mid])
+				lo = mid + 1;
+			else
+				return runLabel[mid];
+		}
+		return BACKGROUND;
+	}
+
+	public int getRunCount() {
+		return runCount;
+	}
+
+	// ------- nonpublic methods --------------------------
+
+	private void collectRuns(ByteProcessor ip) {
+		final byte[] pixels = (byte[]) ip.getPixels();
+		for (int v = 0; v < height; v++) {
+			rowStart[v] = runCount;
+			final int offset = v * width;
+			int u = 0;
+			while (u < width) {
+				while (u < width && pixels[offset + u] == 0) u++;	// skip background
+				if (u == width) break;
+				int u0 = u;
+				while (u < width && pixels[offset + u] != 0) u++;	// foreground run
+				addRun(u0, u);
+			}
+		}
+		rowStart[height] = runCount;
+	}
+
+	private void addRun(int start, int end) {
+		if (runCount == runStart.length) {
+			runStart = Arrays.copyOf(runStart, 2 * runCount);
+			runEnd = Arrays.copyOf(runEnd, 2 * runCount);
+		}
+		runStart[runCount] = start;
+		runEnd[runCount] = end;
+		runCount++;
+	}
+
+	/*
+	 * Runs in adjacent rows are merged if they overlap (4-connectivity) or touch
+	 * diagonally (8-connectivity). Since the runs in each row are sorted, the
+	 * overlapping pairs are found by a single merge-like pass over both rows.
+	 * The final labels are assigned in raster order.
+	 */
+	private BinaryRegion[] labelRuns() {
+		final UnionFind uf = new UnionFind(runCount);
+		final int d = connect8 ? 1 : 0;
+		for (int v = 1; v < height; v++) {
+			int i = rowStart[v - 1];	// runs in previous row
+			int j = rowStart[v];		// runs in current row
+			while (i < rowStart[v] && j < rowStart[v + 1]) {
+				if (runEnd[i] + d > runStart[j] && runEnd[j] + d > runStart[i]) {
+					uf.union(i, j);
+				}
+				// advance the run which ends first:
+				if (runEnd[i] < runEnd[j])
+					i++;
+				else
+					j++;
+			}
+		}
+		// assign consecutive labels and collect the region statistics:
+		runLabel = new int[runCount];
+		List<BinaryRegion> regionList = new ArrayList<BinaryRegion>();
+		for (int v = 0; v < height; v++) {
+			for (int i = rowStart[v]; i < rowStart[v + 1]; i++) {
+				int root = uf.find(i);
+				if (root == i) {	// roots always precede the other runs of their set (see UnionFind)
+					runLabel[i] = START_LABEL + regionList.size();
+					regionList.add(new BinaryRegion(runLabel[i]));
+				}
+				else {
+					runLabel[i] = runLabel[root];
+				}
+				regionList.get(runLabel[i] - START_LABEL).addRun(runStart[i], runEnd[i] - 1, v);
+			}
+		}
+		for (BinaryRegion r : regionList) {
+			r.update();
+		}
+		return regionList.toArray(new BinaryRegion[0]);
+	}
+
+}
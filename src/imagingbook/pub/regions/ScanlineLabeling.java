@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * This source code is made available as supplement to the printed textbooks on 
+ * 'Digital Image Processing', authored by Wilhelm Burger and Mark J. Burge and 
+ * published by Springer-Verlag. Note that this code comes with absolutely no 
+ * warranty of any kind and the authors reserve the right to make changes to 
+ * the code without notice at any time. See http://www.imagingbook.com for 
+ * details and licensing conditions. Last update: 2013.
+ ******************************************************************************/
+
+package imagingbook.pub.regions;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.IntDeque;
+
+/**
+ * Region labeling (4-connected) by scanline flood filling. Instead of
+ * single pixels, complete horizontal spans of foreground pixels are labeled
+ * at once, and only one seed per adjacent span in the rows above and below
+ * is pushed onto the stack. Thus the stack remains small and every pixel is
+ * tested only a few times. The results are the same as with
+ * {@link BreadthFirstLabeling} and {@link DepthFirstLabeling}.
+ */
+public class ScanlineLabeling extends RegionLabeling {
+	
+	private IntDeque stack;	// seed pixel indices (u + v * width), reused for all regions
+	
+	public ScanlineLabeling(ByteProcessor ip) {
+		super(ip);
+	}
+	
+	void applyLabeling() {
+		resetLabel();
+		statsCollected = true;	// see floodFill()
+		stack = new IntDeque();
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				if (labelArray[u + v * width] == FOREGROUND) {
+					// start a new region
+					int label = getNextLabel();
+					floodFill(u, v, label);
+				}
+			}
+		}
+		stack = null;
+	}
+
+	void floodFill(int u, int v, int label) {
+		stack.clear();
+		stack.add(u + v * width);
+		while (!stack.isEmpty()) {
+			int p = stack.removeLast();
+			if (labelArray[p] != FOREGROUND)	// already filled from another seed
+				continue;
+			int y = p / width;
+			int offset = y * width;
+			// extend the span to the left and to the right:
+			int xl = p - offset;
+			while (xl > 0 && labelArray[offset + xl - 1] == FOREGROUND) xl--;
+			int xr = p - offset;
+			while (xr < width - 1 && labelArray[offset + xr + 1] == FOREGROUND) xr++;
+			for (int x = xl; x <= xr; x++) {
+				labelArray[offset + x] = label;
+				addToRegion(label, x, y);
+			}
+			// push seeds for the adjacent spans in the rows above and below:
+			if (y > 0) pushSpans(xl, xr, y - 1);
+			if (y < height - 1) pushSpans(xl, xr, y + 1);
+		}
+	}
+	
+	// pushes one seed for every span of unlabeled foreground pixels in row y within [xl, xr]
+	private void pushSpans(int xl, int xr, int y) {
+		final int offset = y * width;
+		boolean inSpan = false;
+		for (int x = xl; x <= xr; x++) {
+			if (labelArray[offset + x] == FOREGROUND) {
+				if (!inSpan) {
+					stack.add(offset + x);
+					inSpan = true;
+				}
+			}
+			else {
+				inSpan = false;
+			}
+		}
+	}
+
+}
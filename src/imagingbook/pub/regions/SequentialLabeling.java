@@ -11,13 +11,12 @@ package imagingbook.pub.regions;
 
 import ij.IJ;
 import ij.process.ByteProcessor;
-
-import java.util.HashMap;
-import java.util.Map;
+import imagingbook.lib.util.UnionFind;
 
 public class SequentialLabeling extends RegionLabeling {
 
-	Map<LabelCollision,LabelCollision> collisionMap = null;
+	// Label equivalences are kept in a union-find structure (disjoint-set forest):
+	UnionFind uf = null;
 
 	public SequentialLabeling(ByteProcessor ip) {
 		super(ip);
@@ -25,13 +24,13 @@ public class SequentialLabeling extends RegionLabeling {
 
 	void applyLabeling() {
 		if (IJ.debugMode) IJ.log("Sequential region labeling - Step 1");
-		collisionMap = new HashMap<LabelCollision,LabelCollision>(1000);
+		uf = new UnionFind();
 		
 		// Step 1: assign initial labels:
 		resetLabel();
 		for (int v = 0; v < height; v++) {
 			for (int u = 0; u < width; u++) {
-				if (getLabel(u, v) >= START_LABEL) {
+				if (getLabel(u, v) == FOREGROUND) {
 					setLabel(u, v, makeLabel(u, v));
 				}
 			}
@@ -66,6 +65,7 @@ public class SequentialLabeling extends RegionLabeling {
 			&& n[3] == BACKGROUND) {
 			//all neighbors in n[] are empty, assign a new label:
 			newLabel = this.getNextLabel(); 		
+			uf.makeSet(newLabel);
 		} 
 		else {	//at least one label in n[] is not BACKGROUND
 				//find minimum region label among neighbors
@@ -89,116 +89,37 @@ public class SequentialLabeling extends RegionLabeling {
 	}
 
 	void registerCollision(int a, int b) {
-		if (collisionMap == null){
-			throw new Error("registerCollision(): no collission map!");
-		}
-		if (a != b) {
-			LabelCollision c;
-			if (a < b)
-				c = new LabelCollision(a, b);
-			else
-				c = new LabelCollision(b, a);
-			if (!collisionMap.containsKey(c))
-				collisionMap.put(c, c);
-		}
-	}
-	
-	void listCollisions() {
-		IJ.log("Listing collisions********* " + collisionMap.size());
-		for (LabelCollision c: collisionMap.keySet()) {
-			IJ.log("  ---next----" + c.a + "/" + c.b + "=" + c);
+		if (uf == null){
+			throw new Error("registerCollision(): no union-find structure!");
 		}
+		uf.union(a, b);
 	}
 	
 	//---------------------------------------------------------------------------
 
-	int[] makeReplacementTable(int size) {
-		int[] rTable = resolveCollisions(size);
-		return cleanupReplacementTable(rTable);
-	}
-	
 	/**
-	 *  This is the core of the algorithm: The set of collisions (stored in map) 
-	 *  is used to merge connected regions. Transitivity of collisions makes this 
-	 *  a nontrivial task. The algorithm used here is a basic "Connected-Components 
-	 *  Algorithm" as used for finding connected parts in undirected graphs 
-	 *  (e.g. see Corman, Leiserson, Rivest: "Introduction to Algorithms", MIT Press, 
-	 *  1995, p. 441). Here, the regions represent the nodes of the graph while the 
-	 *  collisions are equivalent to the edges of the graph. The implementation is 
-	 *  not particularly efficient, since the merging of sets is done by relabeling 
-	 *  the entire replacement table for each pair of nodes. Still fast enough even 
-	 *  for large and complex images.
+	 * Creates the table for replacing the initial labels by the final labels.
+	 * Since label equivalences were registered in a union-find structure 
+	 * during the first pass, all labels of a set have the same root. 
+	 * Every set receives a new, contiguous label (starting with START_LABEL),
+	 * in the order of its smallest label (i.e., the raster order in which 
+	 * the regions were first encountered). 
 	 */
-	int[] resolveCollisions(int size) {
-		
-		// The table setNumber[i] indicates to which set the element i belongs:
-		//   k == setNumber[e] means that e is in set k 
-		int[] setNumber = new int[size];
-
-		//Initially, we assign a separate set to each element e:
-		for (int e = 0; e < size; e++) {
-			setNumber[e] = e;
-		}
-
-		// Inspect all collisions c=(a,b) one by one [note that a<b]
-		for (LabelCollision c: collisionMap.keySet()) {
-			int A = setNumber[c.a]; //element a is currently in set A
-			int B = setNumber[c.b]; //element b is currently in set B
-			//Merge sets A and B (unless they are the same) by
-			//moving all elements of set B into set A
-			if (A != B) {
-				for (int i = 0; i < size; i++) {
-					if (setNumber[i] == B)
-						setNumber[i] = A;
-				}
-			}
-		}
-		return setNumber;
-	}
-
-	int[] cleanupReplacementTable(int[] table) {
-		if (table.length == 0) return table; // case of empty image
-		// Assume the replacement table looks the following:
-		// table = [0 1 4 4 4 6 6 8 3 3 ]
-		//     i =  0 1 2 3 4 5 6 7 8 9
-		// meaning that label 2 should be replaced by 4 etc.
-		
-		// First, figure out which of the original labels
-		// are still used. For this we use an intermediate array "mark":
-		int[] mark = new int[table.length];
-		for (int i = 0; i < table.length; i++) {
-			int k = table[i];
-			if (k >= 0 && k < table.length)
-				mark[k] = 1;
-		}
-		// Result:
-		// mark = [1 1 0 1 1 0 1 0 1 0 ]
-		//    i =  0 1 2 3 4 5 6 7 8 9
-		
-		// Now we assign new, contiguous labels in mark:
+	int[] makeReplacementTable(int size) {
+		int[] table = new int[size];
+		if (size == 0) return table; // case of empty image
+		table[BACKGROUND] = BACKGROUND;
+		table[FOREGROUND] = FOREGROUND;
+		int[] newLabels = new int[size];	// new label for each root (0 = none yet)
 		int newLabel = START_LABEL;
-		mark[BACKGROUND] = BACKGROUND;
-		mark[FOREGROUND] = FOREGROUND;
-		for (int i = START_LABEL; i < table.length; i++) {
-			if (mark[i]>0) {
-				mark[i] = newLabel;
+		for (int a = START_LABEL; a < size; a++) {
+			int root = uf.find(a);
+			if (newLabels[root] == 0) {
+				newLabels[root] = newLabel;
 				newLabel = newLabel + 1;
 			}
+			table[a] = newLabels[root];
 		}
-		// Result:
-		// mark = [0 1 0 2 3 0 4 0 5 0 ]
-		//    i =  0 1 2 3 4 5 6 7 8 9
-		
-		//Now modify the actual replacement table to reflect the new labels
-		for (int i = 0; i < table.length; i++) {
-			table[i] = mark[table[i]];
-		}
-        // table = [0 1 4 4 4 6 6 8 3 3 ]
-        //              |             |
-        //              V             V
-		// table = [0 1 3 3 3 4 4 5 2 2 ]
-		//     i =  0 1 2 3 4 5 6 7 8 9
-		
 		return table;
 	}
 
@@ -208,37 +129,13 @@ public class SequentialLabeling extends RegionLabeling {
 				for (int u = 0; u < width; u++) {
 					int oldLb = getLabel(u, v);
 					if (oldLb >= START_LABEL && oldLb < replacementTable.length){	
-						setLabel(u, v, replacementTable[oldLb]);
+						int newLb = replacementTable[oldLb];
+						setLabel(u, v, newLb);
+						addToRegion(newLb, u, v);	// final label is known now
 					}
 				}
 			}
-		}
-	}
-	
-	/**
-	 * This class represents a collision between two pixel labels a, b
-	 */
-	class LabelCollision { 
-		private int a, b;
-
-		LabelCollision(int label_a, int label_b) {
-			a = label_a;
-			b = label_b;
-		}
-
-		// This is important because hashCode determines how keys in the hashtable are
-		// compared. It makes sure that the key is directly related to the values of a,b. 
-		// Otherwise the key would be derived from the address of the Collision object.
-		public int hashCode() {
-			return a * b;
-		}
-
-		public boolean equals(Object obj) {
-			if (obj instanceof LabelCollision) {
-				LabelCollision c = (LabelCollision) obj;
-				return (this.a == c.a && this.b == c.b);
-			} else
-				return false;
+			statsCollected = true;
 		}
 	}
 
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * This source code is made available as supplement to the printed textbooks on 
+ * 'Digital Image Processing', authored by Wilhelm Burger and Mark J. Burge and 
+ * published by Springer-Verlag. Note that this code comes with absolutely no 
+ * warranty of any kind and the authors reserve the right to make changes to 
+ * the code without notice at any time. See http://www.imagingbook.com for 
+ * details and licensing conditions. Last update: 2013.
+ ******************************************************************************/
+
+package imagingbook.pub.regions;
+
+import ij.process.ByteProcessor;
+import imagingbook.lib.util.UnionFind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass region analysis without a label image. The binary image is 
+ * consumed row by row, only the labels of the previous and the current row 
+ * are kept, together with the statistics (size, bounding box, first and 
+ * second order moments) of the regions which are still "open", i.e., have 
+ * pixels in the current row. As soon as a region does not continue into the
+ * next row, it is complete and passed to the {@link RegionListener} as a
+ * {@link BinaryRegion}. Regions are 8-connected. Labels are assigned in the 
+ * order in which regions are completed. Since there are at most width + 1
+ * open regions and provisional labels at any time, memory is O(width).
+ */
+public class StreamingRegionAnalyzer {
+	
+	static final int START_LABEL = RegionLabeling.START_LABEL;
+	
+	public interface RegionListener {
+		void regionCompleted(BinaryRegion r);
+	}
+	
+	private final int width;
+	private final RegionListener listener;
+	private int v = 0;							// current row
+	private int nextLabel = START_LABEL;
+	
+	private int[] prevRow, currRow;				// slot of each pixel + 1 (0 = background)
+	
+	// provisional labels ("slots") with union-find and region statistics: 
+	private final int nSlots;
+	private final UnionFind uf;
+	private final int[] freeSlots;				// stack of unused slots
+	private int nFree;
+	private final int[] usedSlots;				// slots used in the previous and current row
+	private int nUsed;
+	private final int[] stamp;					// = v + 1 if the (root) slot has pixels in row v
+	private final int[] size, left, right, top, bottom;
+	private final long[] sumX, sumY, sumXX, sumYY, sumXY;
+	
+	/**
+	 * @param width the width of the image rows
+	 * @param listener receives the completed regions
+	 */
+	public StreamingRegionAnalyzer(int width, RegionListener listener) {
+		this.width = width;
+		this.listener = listener;
+		this.prevRow = new int[width];
+		this.currRow = new int[width];
+		// at most (width + 1) / 2 regions per row, both in the previous and the current row:
+		this.nSlots = width + 2;
+		this.uf = new UnionFind(nSlots);
+		this.freeSlots = new int[nSlots];
+		for (int s = 0; s < nSlots; s++) {
+			freeSlots[s] = nSlots - 1 - s;
+		}
+		this.nFree = nSlots;
+		this.usedSlots = new int[nSlots];
+		this.stamp = new int[nSlots];
+		this.size = new int[nSlots];
+		this.left = new int[nSlots];
+		this.right = new int[nSlots];
+		this.top = new int[nSlots];
+		this.bottom = new int[nSlots];
+		this.sumX = new long[nSlots];
+		this.sumY = new long[nSlots];
+		this.sumXX = new long[nSlots];
+		this.sumYY = new long[nSlots];
+		this.sumXY = new long[nSlots];
+	}
+	
+	/**
+	 * Analyzes the complete image and returns the list of regions 
+	 * (in the order of their completion).
+	 */
+	public static List<BinaryRegion> analyze(ByteProcessor ip) {
+		final List<BinaryRegion> regions = new ArrayList<BinaryRegion>();
+		StreamingRegionAnalyzer sra = new StreamingRegionAnalyzer(ip.getWidth(), 
+			new RegionListener() {
+				public void regionCompleted(BinaryRegion r) {
+					regions.add(r);
+				}
+			});
+		byte[] pixels = (byte[]) ip.getPixels();
+		for (int v = 0; v < ip.getHeight(); v++) {
+			sra.addRow(pixels, v * ip.getWidth());
+		}
+		sra.finish();
+		return regions;
+	}
+	
+	// ------- public methods --------------------------
+	
+	/**
+	 * Processes the next image row (nonzero elements are foreground).
+	 */
+	public void addRow(byte[] row) {
+		addRow(row, 0);
+	}
+	
+	/**
+	 * Processes the next image row, given by the elements
+	 * pixels[offset],...,pixels[offset + width - 1] (nonzero elements are foreground).
+	 */
+	public void addRow(byte[] pixels, int offset) {
+		int[] tmp = prevRow; prevRow = currRow; currRow = tmp;
+		for (int u = 0; u < width; u++) {
+			if (pixels[offset + u] == 0) {
+				currRow[u] = 0;
+				continue;
+			}
+			// neighborhood: [1][2][3]
+			//               [0][x]
+			int n0 = (u > 0) ? currRow[u - 1] : 0;
+			int n1 = (u > 0) ? prevRow[u - 1] : 0;
+			int n2 = prevRow[u];
+			int n3 = (u < width - 1) ? prevRow[u + 1] : 0;
+			int s;
+			if (n0 == 0 && n1 == 0 && n2 == 0 && n3 == 0) {
+				s = newSlot();
+			}
+			else {
+				s = -1;
+				if (n0 > 0) s = union(s, n0 - 1);
+				if (n1 > 0) s = union(s, n1 - 1);
+				if (n2 > 0) s = union(s, n2 - 1);
+				if (n3 > 0) s = union(s, n3 - 1);
+			}
+			addPixel(s, u, v);
+			currRow[u] = s + 1;
+		}
+		closeRegions();
+		v++;
+	}
+	
+	/**
+	 * Completes all remaining regions, must be called after the last row.
+	 */
+	public void finish() {
+		int[] tmp = prevRow; prevRow = currRow; currRow = tmp;
+		Arrays.fill(currRow, 0);
+		closeRegions();
+	}
+	
+	// ------- nonpublic methods --------------------------
+	
+	private int newSlot() {
+		int s = freeSlots[--nFree];
+		uf.makeSet(s);
+		size[s] = 0;
+		sumX[s] = sumY[s] = sumXX[s] = sumYY[s] = sumXY[s] = 0;
+		usedSlots[nUsed++] = s;
+		return s;
+	}
+	
+	// merges the sets of slots a (-1 = none) and b, returns the new root 
+	private int union(int a, int b) {
+		int rb = uf.find(b);
+		if (a < 0) 
+			return rb;
+		int ra = uf.find(a);
+		if (ra == rb) 
+			return ra;
+		if (size[ra] < size[rb]) {
+			int t = ra; ra = rb; rb = t;
+		}
+		// merge the statistics of rb into ra:
+		uf.link(ra, rb);
+		if (size[rb] > 0) {
+			if (size[ra] == 0) {
+				left[ra] = left[rb]; right[ra] = right[rb]; 
+				top[ra] = top[rb]; bottom[ra] = bottom[rb];
+			}
+			else {
+				left[ra] = Math.min(left[ra], left[rb]);
+				right[ra] = Math.max(right[ra], right[rb]);
+				top[ra] = Math.min(top[ra], top[rb]);
+				bottom[ra] = Math.max(bottom[ra], bottom[rb]);
+			}
+			size[ra] += size[rb];
+			sumX[ra] += sumX[rb];
+			sumY[ra] += sumY[rb];
+			sumXX[ra] += sumXX[rb];
+			sumYY[ra] += sumYY[rb];
+			sumXY[ra] += sumXY[rb];
+		}
+		return ra;
+	}
+	
+	private void addPixel(int s, int u, int v) {
+		if (size[s] == 0) {
+			left[s] = right[s] = u;
+			top[s] = bottom[s] = v;
+		}
+		else {
+			if (u < left[s]) left[s] = u;
+			if (u > right[s]) right[s] = u;
+			bottom[s] = v;		// rows are added top to bottom
+		}
+		size[s]++;
+		sumX[s] += u;
+		sumY[s] += v;
+		sumXX[s] += (long) u * u;
+		sumYY[s] += (long) v * v;
+		sumXY[s] += (long) u * v;
+	}
+	
+	/*
+	 * Replaces the slots in the current row by their roots and marks these roots.
+	 * Unmarked roots are completed regions, which are emitted. All slots 
+	 * which are no longer referenced are released.
+	 */
+	private void closeRegions() {
+		for (int u = 0; u < width; u++) {
+			if (currRow[u] > 0) {
+				int r = uf.find(currRow[u] - 1);
+				currRow[u] = r + 1;
+				stamp[r] = v + 1;
+			}
+		}
+		int n = 0;
+		for (int i = 0; i < nUsed; i++) {
+			int s = usedSlots[i];
+			if (uf.isRoot(s) && stamp[s] == v + 1) {	// open region, keep
+				usedSlots[n++] = s;
+			}
+			else {
+				if (uf.isRoot(s)) {	// completed region
+					emit(s);
+				}
+				freeSlots[nFree++] = s;
+			}
+		}
+		nUsed = n;
+	}
+	
+	private void emit(int s) {
+		BinaryRegion r = new BinaryRegion(nextLabel++);
+		r.setStatistics(size[s], left[s], top[s], right[s], bottom[s], 
+				sumX[s], sumY[s], sumXX[s], sumYY[s], sumXY[s]);
+		r.update();
+		listener.regionCompleted(r);
+	}
+	
+}
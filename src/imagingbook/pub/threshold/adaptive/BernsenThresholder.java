@@ -9,14 +9,19 @@
 
 package imagingbook.pub.threshold.adaptive;
 
-import ij.plugin.filter.RankFilters;
 import ij.process.ByteProcessor;
+import imagingbook.pub.morphology.GrayMorpher;
+import imagingbook.pub.morphology.GrayMorpherDisk;
 import imagingbook.pub.threshold.BackgroundMode;
 
 
 /**
- * This implementation of Bernsen's thresholder uses a circular support region,
- * implemented with ImageJ's built-in rank-filter methods.
+ * This implementation of Bernsen's thresholder uses a circular support region.
+ * The local min./max. values are calculated by grayscale erosion/dilation
+ * with a disk-shaped structuring element (see {@link GrayMorpherDisk}). By default,
+ * the disk has the same shape as the kernel of ImageJ's RankFilters, which gives
+ * the same results as the MIN/MAX rank filters. Optionally, larger disks are
+ * approximated by line elements (constant time per pixel).
  */
 public class BernsenThresholder extends AdaptiveThresholder {
 	
@@ -24,6 +29,7 @@ public class BernsenThresholder extends AdaptiveThresholder {
 		public int radius = 15;
 		public int cmin = 15;
 		public BackgroundMode bgMode = BackgroundMode.DARK;
+		public boolean approximateDisk = false;	// approximate larger disks by line elements (faster)
 	}
 	
 	private final Parameters params;
@@ -43,9 +49,11 @@ public class BernsenThresholder extends AdaptiveThresholder {
 		ByteProcessor Imin = (ByteProcessor) I.duplicate();
 		ByteProcessor Imax = (ByteProcessor) I.duplicate();
 
-		RankFilters rf = new RankFilters();
-		rf.rank(Imin, params.radius, RankFilters.MIN);
-		rf.rank(Imax, params.radius, RankFilters.MAX);
+		GrayMorpher gm = params.approximateDisk ?
+				new GrayMorpherDisk(params.radius) :
+				GrayMorpherDisk.makeRankFilterDisk(params.radius);
+		gm.erode(Imin);
+		gm.dilate(Imax);
 
 		int q = (params.bgMode == BackgroundMode.DARK) ? 256 : 0;
 		ByteProcessor Q = new ByteProcessor(width, height);